@@ -0,0 +1,14 @@
+/**
+ * Thrown on commit of a transaction that wrote a key another transaction
+ * committed since it started, the first committer wins. The transaction is
+ * rolled back, it can be retried from the start.
+ */
+public class ConflictException extends IllegalStateException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ConflictException(String key) {
+		super("Write conflict on key " + key);
+	}
+
+}
@@ -1,35 +1,143 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Stack;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * In memory key value database with nested transactions and roll backs.
- * Supports count by value. This is not thread safe and do not use any locks, so
- * no transaction isolation.
+ * Supports count by value.
+ *
+ * The store keeps multiple versions of each key. A {@link Transaction} from
+ * {@link #transaction()} reads a snapshot of the committed data, never
+ * blocking or blocked by writers, buffers its writes and applies them at once
+ * on commit, failing with a {@link ConflictException} if a key it wrote was
+ * committed by another transaction since it started. Commits are serialized
+ * by a short lock, so client threads each running their own transactions
+ * proceed concurrently.
+ *
+ * A {@link Session} from {@link #session()} runs nested BEGIN/COMMIT/ROLLBACK
+ * transactions of its own client over a transaction. The {@link DataBase}
+ * methods of the database object run in a session of the calling thread.
+ * Reads take no locks, a transaction pins the snapshot it reads without one.
+ *
+ * A database opened with a directory is durable, committed writes are
+ * recorded in a {@link WriteAheadLog} replayed on open. Commits return once
+ * logged durably, waiting for the log sync outside the lock so concurrent
+ * committers share a sync.
+ *
+ * Once enough log is written a {@link Snapshot} of the store is written in the
+ * background and the log it covers is deleted, so recovery loads the latest
+ * snapshot and replays only the log after it. The snapshot reads the versions
+ * of its commit while writers go on.
  */
 public class MemDB implements DataBase {
 
+	private static final long SNAPSHOT_LOG_BYTES = 64 * 1024 * 1024;
+
 	private static final MemDB instance = new MemDB();
 
+	private static final ExecutorService snapshots = Executors.newSingleThreadExecutor(task -> {
+		Thread thread = new Thread(task, "memdb-snapshot");
+		thread.setDaemon(true);
+		return thread;
+	});
+
 	public static MemDB getInstance() {
 		return instance;
 	}
+
+	/**
+	 * Opens a durable database, recovering its data from the latest snapshot
+	 * and the log after it, snapshotting every 64MB of log
+	 *
+	 * @param directory The directory of the log and snapshots, created if it
+	 *                  does not exist
+	 * @return The database
+	 */
+	public static MemDB open(Path directory) throws IOException {
+		return open(directory, SNAPSHOT_LOG_BYTES);
+	}
+
+	/**
+	 * Opens a durable database, recovering its data from the latest snapshot
+	 * and the log after it
+	 *
+	 * @param directory        The directory of the log and snapshots, created
+	 *                         if it does not exist
+	 * @param snapshotLogBytes The log written since the last snapshot that
+	 *                         starts a new snapshot
+	 * @return The database
+	 */
+	public static MemDB open(Path directory, long snapshotLogBytes) throws IOException {
+		Files.createDirectories(directory);
+		MemDB memDB = new MemDB();
+		long snapshot = Snapshot.latest(directory);
+		if (snapshot > 0) {
+			Snapshot.read(Snapshot.path(directory, snapshot), (key, value) -> memDB.store.put(key, value, 0, 0),
+					(value, count) -> memDB.valueCountMap.put(value, count, 0, 0));
+		}
+		WriteAheadLog log = new WriteAheadLog(directory);
+		try {
+			log.replay(snapshot, memDB::replay);
+			if (memDB.replaying != null) { // a commit torn by a crash, never acknowledged
+				memDB.replaying = null;
+				log.sync(log.append(WriteAheadLog.ROLLBACK, null, null)); // so later records replay on their own
+			}
+		} catch (IOException | RuntimeException e) {
+			log.close();
+			throw e;
+		}
+		log.truncate(snapshot); // left by a crash before the snapshot was done
+		Snapshot.delete(directory, snapshot);
+		memDB.directory = directory;
+		memDB.snapshotLogBytes = snapshotLogBytes;
+		memDB.log = log;
+		return memDB;
+	}
+
 	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-	
-	// The database is a key valye map of strings
-	private final Map<String, String> store = new HashMap<>();
-	
-	// The value count is tracked in a separate map and updated on each modifiying
-	// operation SET/DELETE
-	private final Map<String, Integer> valueCountMap = new HashMap<>();
-
-	// Transactions start on BEGIN and end on COMMIT/ROLLBACK
-	// nested transactions are supported by a stack of transactions
-	// each transaction is tracked as a stack of data modifying operations
-	// SET/DELETE
-	private Stack<Stack<Operation>> transactionStack = new Stack<>();
+
+	// The database is a key valye map of strings, versioned by commit
+	private final VersionedMap<String> store = new VersionedMap<>();
+
+	// The value count is tracked in a separate map and updated on each commit
+	private final VersionedMap<Integer> valueCountMap = new VersionedMap<>();
+
+	// Commits are serialized, each one adds the versions of its writes at the
+	// next commit number, then publishes it for new transactions to read
+	private final Object commitLock = new Object();
+	private volatile long committed;
+
+	// The snapshots of the open transactions, the versions they may read are
+	// kept
+	private final Set<AtomicLong> pins = ConcurrentHashMap.newKeySet();
+
+	// The session of each thread calling the DataBase methods
+	private final ThreadLocal<Session> sessions = ThreadLocal.withInitial(() -> new Session(this));
+
+	// Keys written by a logged commit being replayed on recovery
+	private Map<String, String> replaying;
+
+	// Null for a database only in memory
+	private WriteAheadLog log;
+	private Path directory;
+	private long snapshotLogBytes;
+	private long snapshotPosition; // log position of the last snapshot
+	private Future<?> snapshotting; // null unless a snapshot is being written
+	private boolean closed; // set under the commit lock, no commits or snapshots start after it
 
 	private MemDB() {
 		// no public construction
@@ -37,107 +145,429 @@ public class MemDB implements DataBase {
 
 	@Override
 	public void begin() {
-		debug("BEGIN");
-		transactionStack.push(new Stack<Operation>());
+		sessions.get().begin();
 	}
 
+	/**
+	 * Deletes all keys in a commit of its own, and rolls back the transaction
+	 * of the calling thread
+	 */
 	public void clear() {
-		store.clear();
-		transactionStack.clear();
-		valueCountMap.clear();
+		sessions.get().reset();
+		long position;
+		synchronized (commitLock) {
+			checkOpen();
+			long commit = committed + 1;
+			long oldest = oldest();
+			for (String key : store.keys()) {
+				store.put(key, null, commit, oldest);
+			}
+			for (String value : valueCountMap.keys()) {
+				valueCountMap.put(value, null, commit, oldest);
+			}
+			position = log == null ? 0 : log.append(WriteAheadLog.CLEAR, null, null);
+			publish(commit, oldest, position);
+		}
+		sync(position);
+	}
+
+	/**
+	 * Closes the log of a durable database once any snapshot being written is
+	 * done, open transactions are lost. Commits after it throw an
+	 * {@link IllegalStateException}.
+	 */
+	public void close() {
+		Future<?> running;
+		synchronized (commitLock) {
+			if (closed) {
+				return;
+			}
+			closed = true; // no snapshot starts once the one running is awaited
+			running = snapshotting;
+		}
+		if (running != null) {
+			try {
+				await(running);
+			} catch (UncheckedIOException e) {
+				// the log it would have deleted is kept, nothing is lost
+			}
+		}
+		synchronized (commitLock) {
+			if (log != null) {
+				try {
+					log.close();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				log = null;
+			}
+		}
 	}
 
 	@Override
 	public void commit() {
-		transactionStack.pop(); // remove innermost nested committed transaction
-		debug("COMMIT");
+		sessions.get().commit();
 	}
 
 	@Override
 	public int countValue(String value) {
-		Integer count = valueCountMap.get(value);
-		int result = (count == null) ? 0 : count;
-		debug("COUNT " + value + " = " + result);
-		return result;
+		return sessions.get().countValue(value);
 	}
 
-	private void debug(String msg) {
-		String level = ""; // nested transaction aware logging
-		for (int i = 0; i < transactionStack.size(); i++) {
-			level = level + "  ";
-		}
-		level = level + "DEBUG";
-		log(level, msg);
+	/**
+	 * Starts a session with a transaction context of its own, for a single
+	 * client thread
+	 */
+	public Session session() {
+		return new Session(this);
 	}
 
-	private void decremenetCount(String value) {
-		Integer count = valueCountMap.get(value);
-		if (count != null) {
-			if (count == 1) { // this was the last instance
-				valueCountMap.remove(value);
-			} else {
-				valueCountMap.put(value, --count);
+	/**
+	 * Starts a transaction reading a snapshot of the data committed now, it
+	 * must end with commit or rollback
+	 */
+	public Transaction transaction() {
+		return new Transaction(this, pin());
+	}
+
+	/**
+	 * Commits the writes of a transaction unless another transaction committed
+	 * one of its keys since it started, then waits until they are durable
+	 */
+	void commit(Transaction transaction) {
+		long position = 0;
+		try {
+			Map<String, String> writes = transaction.writes();
+			if (writes.isEmpty()) {
+				return;
+			}
+			synchronized (commitLock) {
+				checkOpen();
+				for (String key : writes.keySet()) {
+					if (store.latestCommit(key) > transaction.snapshot()) {
+						throw new ConflictException(key);
+					}
+				}
+				position = install(writes);
 			}
+		} finally {
+			release(transaction.pin());
+		}
+		sync(position);
+	}
+
+	/**
+	 * Throws an {@link IllegalStateException} once closed, called holding the
+	 * commit lock
+	 */
+	private void checkOpen() {
+		if (closed) {
+			throw new IllegalStateException("Database is closed");
 		}
 	}
 
+	/**
+	 * Returns the count of a value as of the last published commit, pinned
+	 * while it is read so a read outside a transaction never sees a commit
+	 * being installed or loses the versions it reads
+	 */
+	int count(String value) {
+		AtomicLong pin = pin();
+		try {
+			return count(value, pin.get());
+		} finally {
+			release(pin);
+		}
+	}
+
+	/**
+	 * Returns the count of a value as of a snapshot
+	 */
+	int count(String value, long snapshot) {
+		Integer count = valueCountMap.get(value, snapshot);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Returns the value of a key as of the last published commit, pinned while
+	 * it is read
+	 */
+	String read(String key) {
+		AtomicLong pin = pin();
+		try {
+			return read(key, pin.get());
+		} finally {
+			release(pin);
+		}
+	}
+
+	/**
+	 * Returns the value of a key as of a snapshot
+	 */
+	String read(String key, long snapshot) {
+		return store.get(key, snapshot);
+	}
+
+	/**
+	 * Ends a reader of a snapshot, the versions only it could read can go
+	 */
+	void release(AtomicLong pin) {
+		pins.remove(pin);
+	}
+
+	void log(String type, String msg) {
+		String date;
+		synchronized (dateFormat) {
+			date = dateFormat.format(new Date());
+		}
+		System.out.format("%s %s : %s%n", date, type, msg);
+	}
+
 	@Override
 	public void delete(String key) {
-		String currentValue = store.get(key); // get the value before removing
-		trackTx(key, currentValue);
-		debug("DELETE " + key + " [" + currentValue + "]");
-		store.remove(key);
-		this.decremenetCount(currentValue);
+		sessions.get().delete(key);
 	}
 
 	@Override
 	public String get(String key) {
-		debug("GET " + key + " = " + store.get(key));
-		return store.get(key);
+		return sessions.get().get(key);
 	}
 
-	private void incrementCount(String value) {
-		Integer count = valueCountMap.get(value);
-		if (count == null) { // this is the first instance
-			valueCountMap.put(value, 1);
-		} else {
-			valueCountMap.put(value, ++count);
+	/**
+	 * Adds the versions of a commit, with the value counts they change, and
+	 * logs it, called holding the commit lock
+	 *
+	 * @return The log position to sync to before returning to the committer,
+	 *         zero if not logged
+	 */
+	private long install(Map<String, String> writes) {
+		long commit = committed + 1;
+		long oldest = oldest();
+		Map<String, Integer> counts = new HashMap<>();
+		for (Map.Entry<String, String> write : writes.entrySet()) {
+			String current = store.latest(write.getKey());
+			if (current != null) {
+				counts.merge(current, -1, Integer::sum);
+			}
+			if (write.getValue() != null) {
+				counts.merge(write.getValue(), 1, Integer::sum);
+			}
+			store.put(write.getKey(), write.getValue(), commit, oldest);
 		}
+		for (Map.Entry<String, Integer> count : counts.entrySet()) {
+			if (count.getValue() != 0) {
+				int updated = count(count.getKey(), Long.MAX_VALUE) + count.getValue();
+				valueCountMap.put(count.getKey(), updated == 0 ? null : updated, commit, oldest);
+			}
+		}
+		long position = 0;
+		if (log != null) { // null while replaying
+			synchronized (log) { // all of the commit in one log segment
+				position = append(writes);
+			}
+		}
+		publish(commit, oldest, position);
+		return position;
 	}
 
-	private void log(String type, String msg) {
-		System.out.format("%s %s : %s%n", dateFormat.format(new Date()), type, msg);
+	/**
+	 * Appends the records of a commit to the log
+	 *
+	 * @return The log position after them
+	 */
+	private long append(Map<String, String> writes) {
+		long position = 0;
+		if (writes.size() > 1) {
+			log.append(WriteAheadLog.BEGIN, null, null);
+		}
+		for (Map.Entry<String, String> write : writes.entrySet()) {
+			byte type = write.getValue() == null ? WriteAheadLog.DELETE : WriteAheadLog.SET;
+			position = log.append(type, write.getKey(), write.getValue());
+		}
+		if (writes.size() > 1) {
+			position = log.append(WriteAheadLog.COMMIT, null, null);
+		}
+		return position;
 	}
 
-	@Override
-	public void rollback() {
-		Stack<Operation> operationStack = transactionStack.pop(); // get the innermost nested transaction
-		while (!operationStack.isEmpty()) {
-			Operation op = operationStack.pop();
-			if (op.value == null) {
-				debug("ROLLBACK DELETE " + op.key);
-				store.remove(op.key);
+	/**
+	 * Starts writing a snapshot in the background, called holding the commit
+	 * lock
+	 */
+	private Future<?> freeze() {
+		snapshotPosition = log.appended();
+		snapshotting = snapshots.submit(this::writeSnapshot);
+		return snapshotting;
+	}
+
+	/**
+	 * Returns the oldest snapshot any reader has, versions older than the ones
+	 * it reads can go
+	 */
+	private long oldest() {
+		long oldest = committed;
+		for (AtomicLong pin : pins) {
+			oldest = Math.min(oldest, pin.get());
+		}
+		return oldest;
+	}
+
+	/**
+	 * Pins the snapshot of the data committed now. The pin is set before the
+	 * commit it holds is read again, until they match, so a committer either
+	 * sees the pin or has not published a commit newer than it yet.
+	 */
+	private AtomicLong pin() {
+		AtomicLong pin = new AtomicLong(committed);
+		pins.add(pin);
+		long snapshot;
+		while ((snapshot = committed) != pin.get()) {
+			pin.set(snapshot);
+		}
+		return pin;
+	}
+
+	/**
+	 * Makes a commit visible to new transactions, drops the removed keys no
+	 * reader can see and starts a snapshot once enough log is written, called
+	 * holding the commit lock
+	 */
+	private void publish(long commit, long oldest, long position) {
+		committed = commit;
+		store.prune(oldest);
+		valueCountMap.prune(oldest);
+		if (position > 0 && snapshotting == null && position - snapshotPosition > snapshotLogBytes) {
+			freeze();
+		}
+	}
+
+	/**
+	 * Applies a record read from the write ahead log on recovery, the writes
+	 * of a commit are applied at its COMMIT so a torn one is dropped, and
+	 * rolled back in the log once replayed
+	 */
+	private void replay(byte type, String key, String value) {
+		switch (type) {
+		case WriteAheadLog.SET:
+		case WriteAheadLog.DELETE:
+			if (replaying != null) {
+				replaying.put(key, value);
 			} else {
-				debug("ROLLBACK SET " + op.key + " = " + op.value);
-				store.put(op.key, op.value);
+				install(Collections.singletonMap(key, value));
 			}
+			break;
+		case WriteAheadLog.BEGIN:
+			replaying = new LinkedHashMap<>();
+			break;
+		case WriteAheadLog.COMMIT:
+			if (replaying != null) {
+				install(replaying);
+			}
+			replaying = null;
+			break;
+		case WriteAheadLog.ROLLBACK:
+			replaying = null;
+			break;
+		case WriteAheadLog.CLEAR:
+			replaying = null;
+			clear();
+			break;
+		default:
+			throw new IllegalStateException("Unknown log record type " + type);
 		}
 	}
 
+	@Override
+	public void rollback() {
+		sessions.get().rollback();
+	}
+
 	@Override
 	public void set(String key, String value) {
-		String currentValue = store.get(key);
-		trackTx(key, currentValue);
-		debug("SET " + key + " = " + value);
-		store.put(key, value);
-		if (value != null && !value.equals(currentValue)) { // only for new values
-			incrementCount(value);
+		sessions.get().set(key, value);
+	}
+
+	/**
+	 * Writes a snapshot of a durable database now and deletes the log it
+	 * covers, waiting until it is done. Other callers are not blocked while
+	 * the snapshot is written.
+	 */
+	public void snapshot() {
+		while (true) {
+			Future<?> running;
+			boolean started = false;
+			synchronized (commitLock) {
+				checkOpen();
+				if (log == null) {
+					throw new IllegalStateException("Not a durable database");
+				}
+				running = snapshotting;
+				if (running == null) {
+					running = freeze();
+					started = true;
+				}
+			}
+			await(running);
+			if (started) {
+				return;
+			}
 		}
 	}
 
-	private void trackTx(String key, String value) {
-		if (!transactionStack.isEmpty()) { // if part of an open transaction
-			transactionStack.peek().add(new Operation(key, value)); // update the innermost nested transaction's operation stack
+	/**
+	 * Waits until the write ahead log is durable up to the position, sharing
+	 * the log sync with concurrent committers
+	 */
+	private void sync(long position) {
+		WriteAheadLog log = this.log;
+		if (position > 0 && log != null) { // a closed log was synced on close
+			try {
+				log.sync(position);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	private static void await(Future<?> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for snapshot", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Starts a new log segment and writes the snapshot of the commits logged
+	 * before it on the snapshot thread, then deletes the log before it, so
+	 * committers never wait for the log force of the rollover
+	 */
+	private void writeSnapshot() {
+		AtomicLong pin = null;
+		try {
+			long segment = log.rollover();
+			synchronized (commitLock) { // every commit logged before the segment is published
+				pin = pin();
+			}
+			Snapshot.write(Snapshot.path(directory, segment), store.entries(pin.get()));
+			log.truncate(segment);
+			Snapshot.delete(directory, segment);
+		} catch (IOException e) {
+			log("ERROR", "Snapshot failed, keeping the log " + e);
+			throw new UncheckedIOException(e);
+		} finally {
+			if (pin != null) {
+				release(pin);
+			}
+			synchronized (commitLock) {
+				snapshotting = null;
+			}
 		}
 	}
 
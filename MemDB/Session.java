@@ -0,0 +1,144 @@
+/**
+ * A client session of a {@link MemDB}, with a nested transaction context of
+ * its own over the shared store. The outermost BEGIN starts a snapshot
+ * isolated {@link Transaction} shared by the nested ones, and the outermost
+ * COMMIT commits it, so sessions do not see each other's open transactions
+ * and their BEGIN/ROLLBACK do not interleave. The outermost COMMIT throws a
+ * {@link ConflictException} if another session committed a key written since
+ * the BEGIN. Operations outside a transaction commit on their own.
+ *
+ * Reads take no locks. Not thread safe, each client thread uses a session of
+ * its own.
+ */
+public class Session implements DataBase {
+
+	private final MemDB memDB;
+
+	// Transactions start on BEGIN and end on COMMIT/ROLLBACK
+	// nested transactions are supported by a layer of writes in the
+	// transaction for each, merged down on COMMIT and dropped on ROLLBACK
+	private int depth;
+	private Transaction transaction; // null outside BEGIN/COMMIT
+
+	Session(MemDB memDB) {
+		this.memDB = memDB;
+	}
+
+	@Override
+	public void begin() {
+		debug("BEGIN");
+		if (depth == 0) {
+			transaction = memDB.transaction();
+		} else {
+			transaction.push();
+		}
+		depth++;
+	}
+
+	@Override
+	public void commit() {
+		if (depth == 0) {
+			throw new IllegalStateException("No transaction");
+		}
+		depth--;
+		debug("COMMIT");
+		if (depth > 0) {
+			transaction.merge(); // into the transaction it is nested in
+		} else {
+			Transaction committing = transaction;
+			transaction = null;
+			committing.commit();
+		}
+	}
+
+	@Override
+	public int countValue(String value) {
+		int result = transaction == null ? memDB.count(value) : transaction.countValue(value);
+		debug("COUNT " + value + " = " + result);
+		return result;
+	}
+
+	private void debug(String msg) {
+		String level = ""; // nested transaction aware logging
+		for (int i = 0; i < depth; i++) {
+			level = level + "  ";
+		}
+		level = level + "DEBUG";
+		memDB.log(level, msg);
+	}
+
+	@Override
+	public void delete(String key) {
+		debug("DELETE " + key + " [" + current(key) + "]");
+		write(key, null);
+	}
+
+	@Override
+	public String get(String key) {
+		String value = current(key);
+		debug("GET " + key + " = " + value);
+		return value;
+	}
+
+	/**
+	 * Rolls back any open transaction
+	 */
+	void reset() {
+		if (transaction != null) {
+			transaction.rollback();
+			transaction = null;
+		}
+		depth = 0;
+	}
+
+	@Override
+	public void rollback() {
+		if (depth == 0) {
+			throw new IllegalStateException("No transaction");
+		}
+		depth--;
+		debug("ROLLBACK");
+		if (depth > 0) {
+			transaction.pop(); // drop the writes of the innermost nested transaction
+		} else {
+			transaction.rollback();
+			transaction = null;
+		}
+	}
+
+	@Override
+	public void set(String key, String value) {
+		debug("SET " + key + " = " + value);
+		write(key, value);
+	}
+
+	/**
+	 * Returns the value as of the open transaction, or the last published
+	 * commit
+	 */
+	private String current(String key) {
+		return transaction == null ? memDB.read(key) : transaction.get(key);
+	}
+
+	/**
+	 * Writes to the open transaction, or commits a single write, again on a
+	 * conflict as it does not depend on what it read
+	 */
+	private void write(String key, String value) {
+		if (transaction != null) {
+			transaction.set(key, value); // to the layer of the innermost nested transaction
+			return;
+		}
+		while (true) {
+			Transaction single = memDB.transaction();
+			single.set(key, value);
+			try {
+				single.commit();
+				return;
+			} catch (ConflictException e) {
+				// committed by another session meanwhile, write over it
+			}
+		}
+	}
+
+}
@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of the database store and value counts, named after
+ * the first log segment it does not cover.
+ *
+ * The file holds chunks of up to 4096 entries, key and value for store chunks
+ * and value and int count for count chunks, strings as an int byte length, or
+ * -1 for null, followed by the UTF-8 bytes. The chunks are followed by an
+ * index of the kind, entry count, offset, length and CRC32 of each chunk, and
+ * a footer of the index offset, the chunk count, a version and a magic number.
+ * On load the chunks are memory mapped and decoded in parallel.
+ */
+class Snapshot {
+
+	private static final int CHUNK_SIZE = 4096; // entries per chunk
+	private static final int MAGIC = 0x4d454d44; // "MEMD"
+	private static final int VERSION = 1;
+	private static final int FOOTER = 8 + 4 + 4 + 4;
+	private static final int INDEX_ENTRY = 1 + 4 + 8 + 4 + 4;
+	private static final byte STORE = 0;
+	private static final byte COUNTS = 1;
+
+	private Snapshot() {
+		// no construction
+	}
+
+	/**
+	 * Deletes the snapshots older than the given one and any partial snapshot
+	 */
+	static void delete(Path directory, long segment) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.snapshot*")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (name.endsWith(".tmp") || (name.matches("[0-9]{16}\\.snapshot")
+						&& Long.parseLong(name.substring(0, 16)) < segment)) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the first log segment the latest snapshot in the directory does
+	 * not cover, or zero if there is no snapshot
+	 */
+	static long latest(Path directory) throws IOException {
+		long latest = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.snapshot")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (name.matches("[0-9]{16}\\.snapshot")) {
+					latest = Math.max(latest, Long.parseLong(name.substring(0, 16)));
+				}
+			}
+		}
+		return latest;
+	}
+
+	static Path path(Path directory, long segment) {
+		return directory.resolve(String.format("%016d.snapshot", segment));
+	}
+
+	/**
+	 * Loads a snapshot, passing each key and value to the store and each value
+	 * and count to the counts
+	 */
+	static void read(Path path, BiConsumer<String, String> store, BiConsumer<String, Integer> counts)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ByteBuffer footer = read(channel, size - FOOTER, FOOTER, path);
+			long indexOffset = footer.getLong();
+			int chunks = footer.getInt();
+			int version = footer.getInt();
+			if (footer.getInt() != MAGIC || indexOffset < 0 || chunks < 0
+					|| indexOffset + (long) chunks * INDEX_ENTRY + FOOTER != size) {
+				throw new IOException("Corrupt snapshot " + path);
+			}
+			if (version != VERSION) {
+				throw new IOException("Unsupported snapshot version " + version + " in " + path);
+			}
+			ByteBuffer index = read(channel, indexOffset, chunks * INDEX_ENTRY, path);
+			byte[] kinds = new byte[chunks];
+			int[] entries = new int[chunks];
+			long[] offsets = new long[chunks];
+			int[] lengths = new int[chunks];
+			int[] checksums = new int[chunks];
+			for (int i = 0; i < chunks; i++) {
+				kinds[i] = index.get();
+				entries[i] = index.getInt();
+				offsets[i] = index.getLong();
+				lengths[i] = index.getInt();
+				checksums[i] = index.getInt();
+				if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] + lengths[i] > indexOffset) {
+					throw new IOException("Corrupt snapshot " + path);
+				}
+			}
+			List<String[]> decoded;
+			try {
+				decoded = IntStream.range(0, chunks).parallel().mapToObj(i -> {
+					try {
+						ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, offsets[i], lengths[i]);
+						return decode(chunk, kinds[i], entries[i], checksums[i], path);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}).collect(Collectors.toList());
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			for (int i = 0; i < chunks; i++) {
+				String[] pairs = decoded.get(i);
+				for (int j = 0; j < pairs.length; j += 2) {
+					if (kinds[i] == STORE) {
+						store.accept(pairs[j], pairs[j + 1]);
+					} else {
+						counts.accept(pairs[j], Integer.valueOf(pairs[j + 1]));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the entries of the store and the value counts of their values to a
+	 * temporary file next to the path, then moves it over the path, so a failed
+	 * write never leaves a partial snapshot behind. The move is forced before
+	 * returning, so the log it covers can be deleted.
+	 */
+	static void write(Path path, Iterable<Map.Entry<String, String>> store) throws IOException {
+		Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+			ByteBuffer index = ByteBuffer.allocate(64 * INDEX_ENTRY);
+			Map<String, Integer> counts = new HashMap<>();
+			int entries = 0;
+			for (Map.Entry<String, String> entry : store) {
+				chunk = putString(chunk, entry.getKey());
+				chunk = putString(chunk, entry.getValue());
+				if (entry.getValue() != null) {
+					counts.merge(entry.getValue(), 1, Integer::sum);
+				}
+				if (++entries == CHUNK_SIZE) {
+					index = write(channel, chunk, index, STORE, entries);
+					entries = 0;
+				}
+			}
+			if (entries > 0) {
+				index = write(channel, chunk, index, STORE, entries);
+				entries = 0;
+			}
+			for (Map.Entry<String, Integer> count : counts.entrySet()) {
+				chunk = putString(chunk, count.getKey());
+				chunk = ensure(chunk, 4).putInt(count.getValue());
+				if (++entries == CHUNK_SIZE) {
+					index = write(channel, chunk, index, COUNTS, entries);
+					entries = 0;
+				}
+			}
+			if (entries > 0) {
+				index = write(channel, chunk, index, COUNTS, entries);
+			}
+			long indexOffset = channel.position();
+			int chunks = index.position() / INDEX_ENTRY;
+			index = ensure(index, FOOTER).putLong(indexOffset).putInt(chunks).putInt(VERSION).putInt(MAGIC);
+			index.flip();
+			while (index.hasRemaining()) {
+				channel.write(index);
+			}
+			channel.force(true);
+		}
+		Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		WriteAheadLog.force(path.getParent());
+	}
+
+	private static String[] decode(ByteBuffer mapped, byte kind, int entries, int checksum, Path path)
+			throws IOException {
+		byte[] bytes = new byte[mapped.remaining()]; // one copy out of the page cache
+		mapped.get(bytes);
+		CRC32 crc = new CRC32();
+		crc.update(bytes, 0, bytes.length);
+		if ((int) crc.getValue() != checksum) {
+			throw new IOException("Corrupt snapshot chunk in " + path);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		String[] pairs = new String[entries * 2];
+		for (int i = 0; i < pairs.length; i += 2) {
+			pairs[i] = getString(buffer);
+			pairs[i + 1] = kind == STORE ? getString(buffer) : String.valueOf(buffer.getInt());
+		}
+		return pairs;
+	}
+
+	private static ByteBuffer ensure(ByteBuffer buffer, int bytes) {
+		if (buffer.remaining() >= bytes) {
+			return buffer;
+		}
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+		buffer.flip();
+		return larger.put(buffer);
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length < 0) {
+			return null;
+		}
+		String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position() + length);
+		return value;
+	}
+
+	private static ByteBuffer putString(ByteBuffer buffer, String value) {
+		if (value == null) {
+			return ensure(buffer, 4).putInt(-1);
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		return ensure(buffer, 4 + bytes.length).putInt(bytes.length).put(bytes);
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length, Path path) throws IOException {
+		if (position < 0) {
+			throw new IOException("Corrupt snapshot " + path);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Truncated snapshot " + path);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Writes a chunk and adds it to the index
+	 *
+	 * @return The index
+	 */
+	private static ByteBuffer write(FileChannel channel, ByteBuffer chunk, ByteBuffer index, byte kind, int entries)
+			throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(chunk.array(), 0, chunk.position());
+		index = ensure(index, INDEX_ENTRY);
+		index.put(kind).putInt(entries).putLong(channel.position()).putInt(chunk.position())
+				.putInt((int) crc.getValue());
+		chunk.flip();
+		while (chunk.hasRemaining()) {
+			channel.write(chunk);
+		}
+		chunk.clear();
+		return index;
+	}
+
+}
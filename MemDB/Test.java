@@ -1,3 +1,13 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
 /**
  * 
  * Tests for MemDB operations  including nested transactions and roll backs
@@ -5,7 +15,7 @@
  */
 class Test {
 
-	public void test() {
+	public void test() throws IOException {
 		testSet();
 		testBoundaries();
 		testGet();
@@ -14,10 +24,25 @@ class Test {
 		testCountMultipleAdd();
 		testCountDelete();
 		testCountMultipleDelete();
+		testCountRollback();
 		testTransaction();
 		testRollback();
 		testNestedTransaction();
 		testNestedTransactionRollback();
+		testRecovery();
+		testRecoveryTornTail();
+		testRecoveryTornCommit();
+		testCommitAfterClose();
+		testGroupCommit();
+		testSnapshot();
+		testSnapshotWhileWriting();
+		testSnapshotIsolation();
+		testCommitWithNestedOpen();
+		testWriteConflict();
+		testConcurrentTransactions();
+		testSessions();
+		testConcurrentSessions();
+		testReadsWhileCommitting();
 	}
 
 	private void testBoundaries() {
@@ -115,6 +140,42 @@ class Test {
 		memDB.clear();
 	}
 
+	public void testCountRollback() {
+		System.out.println();
+		System.out.println("Test VALUE COUNT with nested ROLLBACK\n");
+		System.out.println();
+
+		MemDB memDB = MemDB.getInstance();
+		memDB.clear();
+		memDB.set("A", "1");
+		memDB.set("B", "1");
+		memDB.begin();
+		memDB.set("A", "2");
+		assert (memDB.countValue("1") == 1);
+		assert (memDB.countValue("2") == 1);
+		memDB.begin();
+		memDB.delete("A");
+		memDB.set("B", "2");
+		memDB.set("C", "2");
+		assert (memDB.countValue("1") == 0);
+		assert (memDB.countValue("2") == 2);
+		memDB.rollback();
+		assert (memDB.countValue("1") == 1);
+		assert (memDB.countValue("2") == 1);
+		memDB.begin();
+		memDB.set("B", "2");
+		memDB.commit();
+		assert (memDB.countValue("1") == 0);
+		assert (memDB.countValue("2") == 2);
+		memDB.rollback();
+		assert (memDB.countValue("1") == 2);
+		assert (memDB.countValue("2") == 0);
+		memDB.set("A", "2");
+		assert (memDB.countValue("1") == 1);
+		assert (memDB.countValue("2") == 1);
+		memDB.clear();
+	}
+
 	public void testDelete() {
 		System.out.println();
 		System.out.println("Test DELETE");
@@ -147,6 +208,43 @@ class Test {
 		memDB.clear();
 	}
 
+	public void testGroupCommit() throws IOException {
+		System.out.println();
+		System.out.println("Test group COMMIT\n");
+		System.out.println();
+
+		Path directory = Files.createTempDirectory("memdb");
+		MemDB memDB = MemDB.open(directory);
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int thread = t;
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 25; i++) {
+					memDB.set(thread + ":" + i, String.valueOf(thread));
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		memDB.close();
+		MemDB recovered = MemDB.open(directory);
+		for (int t = 0; t < 4; t++) {
+			assert (recovered.countValue(String.valueOf(t)) == 25);
+			assert (recovered.get(t + ":24").equals(String.valueOf(t)));
+		}
+		recovered.close();
+		delete(directory);
+	}
+
 	public void testNestedTransaction() {
 		System.out.println();
 		System.out.println("Test nested COMMIT\n");
@@ -215,6 +313,136 @@ class Test {
 		memDB.clear();
 	}
 
+	public void testRecovery() throws IOException {
+		System.out.println();
+		System.out.println("Test recovery\n");
+		System.out.println();
+
+		Path directory = Files.createTempDirectory("memdb");
+		MemDB memDB = MemDB.open(directory);
+		memDB.set("A", "1");
+		memDB.set("B", "2");
+		memDB.set("C", "3");
+		memDB.delete("C");
+		memDB.begin();
+		memDB.set("A", "11");
+		memDB.begin();
+		memDB.set("D", "4");
+		memDB.rollback();
+		memDB.commit();
+		memDB.begin();
+		memDB.set("E", "5"); // never committed
+		memDB.delete("B");
+		memDB.close();
+		MemDB recovered = MemDB.open(directory);
+		assert (recovered.get("A").equals("11"));
+		assert (recovered.get("B").equals("2"));
+		assert (recovered.get("C") == null);
+		assert (recovered.get("D") == null);
+		assert (recovered.get("E") == null);
+		recovered.set("F", "6");
+		recovered.close();
+		recovered = MemDB.open(directory);
+		assert (recovered.get("E") == null);
+		assert (recovered.get("F").equals("6"));
+		recovered.clear();
+		recovered.close();
+		recovered = MemDB.open(directory);
+		assert (recovered.get("A") == null);
+		recovered.close();
+		delete(directory);
+	}
+
+	public void testRecoveryTornTail() throws IOException {
+		System.out.println();
+		System.out.println("Test recovery with a torn log tail\n");
+		System.out.println();
+
+		Path directory = Files.createTempDirectory("memdb");
+		MemDB memDB = MemDB.open(directory);
+		memDB.set("A", "1");
+		memDB.set("B", "2");
+		memDB.close();
+		Path file = WriteAheadLog.path(directory, 1);
+		long size = Files.size(file);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 20, 1, 2, 3 }), size); // half written record
+		}
+		MemDB recovered = MemDB.open(directory);
+		assert (recovered.get("A").equals("1"));
+		assert (recovered.get("B").equals("2"));
+		assert (Files.size(file) == size);
+		recovered.set("C", "3");
+		recovered.close();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.write(ByteBuffer.wrap(new byte[] { 42 }), size + 10); // corrupt the last record
+		}
+		recovered = MemDB.open(directory);
+		assert (recovered.get("B").equals("2"));
+		assert (recovered.get("C") == null);
+		recovered.close();
+		delete(directory);
+	}
+
+	public void testRecoveryTornCommit() throws IOException {
+		System.out.println();
+		System.out.println("Test recovery with a torn multi key commit\n");
+		System.out.println();
+
+		Path directory = Files.createTempDirectory("memdb");
+		MemDB memDB = MemDB.open(directory);
+		memDB.set("A", "1");
+		memDB.begin();
+		memDB.set("B", "2");
+		memDB.set("C", "3");
+		memDB.commit();
+		memDB.close();
+		Path file = WriteAheadLog.path(directory, 1);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(Files.size(file) - 17); // the COMMIT record, BEGIN and SETs left
+		}
+		MemDB recovered = MemDB.open(directory);
+		assert (recovered.get("B") == null);
+		recovered.set("D", "4");
+		recovered.close();
+		recovered = MemDB.open(directory);
+		assert (recovered.get("A").equals("1"));
+		assert (recovered.get("B") == null);
+		assert (recovered.get("C") == null);
+		assert (recovered.get("D").equals("4"));
+		recovered.close();
+		delete(directory);
+	}
+
+	public void testCommitAfterClose() throws IOException {
+		System.out.println();
+		System.out.println("Test commit after close\n");
+		System.out.println();
+
+		Path directory = Files.createTempDirectory("memdb");
+		MemDB memDB = MemDB.open(directory);
+		memDB.set("A", "1");
+		memDB.close();
+		try {
+			memDB.set("B", "2");
+			assert false : "Commit after close";
+		} catch (IllegalStateException e) {
+			// not durable any more
+		}
+		try {
+			memDB.snapshot();
+			assert false : "Snapshot after close";
+		} catch (IllegalStateException e) {
+			// the log is closed
+		}
+		memDB.close();
+		MemDB recovered = MemDB.open(directory);
+		assert (recovered.get("A").equals("1"));
+		assert (recovered.get("B") == null);
+		recovered.close();
+		delete(directory);
+	}
+
 	public void testRollback() {
 		System.out.println();
 		System.out.println("Test ROLLBACK\n");
@@ -237,6 +465,164 @@ class Test {
 		memDB.clear();
 	}
 
+	public void testConcurrentTransactions() {
+		System.out.println();
+		System.out.println("Test concurrent transactions\n");
+		System.out.println();
+
+		MemDB memDB = MemDB.getInstance();
+		memDB.clear();
+		memDB.set("A", "0");
+		memDB.set("B", "0");
+		int[] conflicts = new int[1];
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 8; t++) {
+			threads.add(new Thread(() -> {
+				for (int i = 0; i < 500; i++) {
+					while (true) { // move one from A to B, again on a conflict
+						Transaction transaction = memDB.transaction();
+						int a = Integer.parseInt(transaction.get("A"));
+						int b = Integer.parseInt(transaction.get("B"));
+						assert (a + b == 0);
+						transaction.set("A", String.valueOf(a - 1));
+						transaction.set("B", String.valueOf(b + 1));
+						try {
+							transaction.commit();
+							break;
+						} catch (ConflictException e) {
+							synchronized (conflicts) {
+								conflicts[0]++;
+							}
+						}
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		System.out.println("Conflicts retried " + conflicts[0]);
+		assert (memDB.get("A").equals("-4000"));
+		assert (memDB.get("B").equals("4000"));
+		memDB.clear();
+	}
+
+	public void testConcurrentSessions() {
+		System.out.println();
+		System.out.println("Test concurrent sessions\n");
+		System.out.println();
+
+		MemDB memDB = MemDB.getInstance();
+		memDB.clear();
+		List<Thread> threads = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int thread = t;
+			threads.add(new Thread(() -> {
+				Session session = memDB.session();
+				for (int i = 0; i < 20; i++) {
+					while (true) { // count up, again on a conflict
+						session.begin();
+						String count = session.get("COUNT");
+						session.set("COUNT", String.valueOf(count == null ? 1 : Integer.parseInt(count) + 1));
+						session.begin();
+						session.set("T" + thread, String.valueOf(i));
+						session.rollback();
+						try {
+							session.commit();
+							break;
+						} catch (ConflictException e) {
+							// another session counted first
+						}
+					}
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		assert (memDB.get("COUNT").equals("80"));
+		assert (memDB.get("T0") == null);
+		memDB.clear();
+	}
+
+	public void testReadsWhileCommitting() {
+		System.out.println();
+		System.out.println("Test reads outside a transaction while committing\n");
+		System.out.println();
+
+		MemDB memDB = MemDB.getInstance();
+		memDB.clear();
+		memDB.set("A", "0");
+		Thread writer = new Thread(() -> {
+			for (int i = 1; i <= 5000; i++) {
+				Transaction transaction = memDB.transaction();
+				transaction.set("A", String.valueOf(i));
+				transaction.commit();
+			}
+		});
+		writer.start();
+		Session session = memDB.session();
+		for (int i = 0; i < 2000; i++) {
+			assert (session.get("A") != null); // never a version pruned under the read
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		assert (memDB.get("A").equals("5000"));
+		memDB.clear();
+	}
+
+	public void testSessions() {
+		System.out.println();
+		System.out.println("Test sessions\n");
+		System.out.println();
+
+		MemDB memDB = MemDB.getInstance();
+		memDB.clear();
+		Session first = memDB.session();
+		Session second = memDB.session();
+		first.set("A", "0");
+		first.begin();
+		first.set("A", "1");
+		second.begin();
+		assert (second.get("A").equals("0")); // first not committed
+		second.set("B", "2");
+		second.begin();
+		first.begin();
+		first.set("C", "3");
+		second.rollback(); // only the inner transaction of the second
+		first.commit();
+		second.set("D", "4");
+		second.rollback();
+		assert (first.get("B") == null);
+		assert (first.get("C").equals("3"));
+		first.commit();
+		assert (second.get("A").equals("1"));
+		assert (second.get("C").equals("3"));
+		assert (second.get("D") == null);
+		assert (second.countValue("1") == 1);
+		memDB.clear();
+	}
+
 	public void testSet() {
 		System.out.println();
 		System.out.println("Test SET");
@@ -250,6 +636,127 @@ class Test {
 		memDB.clear();
 	}
 
+	public void testSnapshot() throws IOException {
+		System.out.println();
+		System.out.println("Test SNAPSHOT and log truncation\n");
+		System.out.println();
+
+		Path directory = Files.createTempDirectory("memdb");
+		MemDB memDB = MemDB.open(directory, 1024);
+		for (int i = 0; i < 200; i++) {
+			memDB.set("K" + i, String.valueOf(i % 10));
+		}
+		memDB.delete("K0");
+		memDB.set("K1", null);
+		memDB.begin();
+		memDB.set("K2", "TWO");
+		memDB.commit();
+		memDB.snapshot();
+		assert (WriteAheadLog.segments(directory).size() == 1);
+		assert (Files.exists(Snapshot.path(directory, WriteAheadLog.segments(directory).get(0))));
+		memDB.set("K3", "THREE");
+		memDB.begin();
+		memDB.set("K4", "FOUR"); // never committed
+		memDB.close();
+		MemDB recovered = MemDB.open(directory, 1024);
+		assert (recovered.get("K0") == null);
+		assert (recovered.get("K1") == null);
+		assert (recovered.get("K2").equals("TWO"));
+		assert (recovered.get("K3").equals("THREE"));
+		assert (recovered.get("K4").equals("4"));
+		assert (recovered.get("K199").equals("9"));
+		assert (recovered.countValue("5") == 20);
+		assert (recovered.countValue("THREE") == 1);
+		recovered.close();
+		delete(directory);
+	}
+
+	public void testSnapshotWhileWriting() throws IOException {
+		System.out.println();
+		System.out.println("Test SNAPSHOT while writing\n");
+		System.out.println();
+
+		Path directory = Files.createTempDirectory("memdb");
+		MemDB memDB = MemDB.open(directory, Long.MAX_VALUE);
+		for (int i = 0; i < 2000; i++) {
+			memDB.set("K" + i, "OLD");
+		}
+		Thread snapshot = new Thread(memDB::snapshot);
+		snapshot.start();
+		for (int i = 0; i < 2000; i += 2) {
+			memDB.set("K" + i, "NEW");
+			memDB.delete("K" + (i + 1));
+			assert (memDB.get("K" + i).equals("NEW"));
+			assert (memDB.get("K" + (i + 1)) == null);
+		}
+		try {
+			snapshot.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		assert (memDB.get("K1998").equals("NEW"));
+		assert (memDB.get("K1999") == null);
+		memDB.snapshot();
+		memDB.close();
+		MemDB recovered = MemDB.open(directory);
+		assert (recovered.get("K0").equals("NEW"));
+		assert (recovered.get("K1") == null);
+		assert (recovered.countValue("NEW") == 1000);
+		assert (recovered.countValue("OLD") == 0);
+		recovered.close();
+		delete(directory);
+	}
+
+	public void testSnapshotIsolation() {
+		System.out.println();
+		System.out.println("Test snapshot isolation\n");
+		System.out.println();
+
+		MemDB memDB = MemDB.getInstance();
+		memDB.clear();
+		memDB.set("A", "1");
+		memDB.set("B", "1");
+		Transaction reader = memDB.transaction();
+		Transaction writer = memDB.transaction();
+		writer.set("A", "2");
+		writer.delete("B");
+		writer.set("C", "1");
+		assert (writer.get("A").equals("2"));
+		assert (writer.countValue("1") == 1);
+		assert (memDB.get("A").equals("1")); // not committed yet
+		writer.commit();
+		assert (memDB.get("A").equals("2"));
+		assert (memDB.get("B") == null);
+		assert (memDB.countValue("1") == 1);
+		assert (reader.get("A").equals("1")); // still reads its snapshot
+		assert (reader.get("B").equals("1"));
+		assert (reader.get("C") == null);
+		assert (reader.countValue("1") == 2);
+		reader.commit(); // read only, never conflicts
+		memDB.clear();
+	}
+
+	public void testCommitWithNestedOpen() {
+		System.out.println();
+		System.out.println("Test COMMIT with a nested transaction open\n");
+		System.out.println();
+
+		MemDB memDB = MemDB.getInstance();
+		memDB.clear();
+		Transaction transaction = memDB.transaction();
+		transaction.set("A", "1");
+		transaction.push();
+		transaction.set("B", "1");
+		transaction.push();
+		transaction.delete("A");
+		transaction.commit();
+		assert (memDB.get("A") == null);
+		assert (memDB.get("B").equals("1"));
+		assert (memDB.countValue("1") == 1);
+		memDB.clear();
+	}
+
 	public void testTransaction() {
 		System.out.println();
 		System.out.println("Test COMMIT\n");
@@ -272,4 +779,47 @@ class Test {
 		memDB.clear();
 	}
 
+	public void testWriteConflict() {
+		System.out.println();
+		System.out.println("Test write conflict\n");
+		System.out.println();
+
+		MemDB memDB = MemDB.getInstance();
+		memDB.clear();
+		memDB.set("A", "0");
+		Transaction first = memDB.transaction();
+		Transaction second = memDB.transaction();
+		Transaction other = memDB.transaction();
+		first.set("A", "1");
+		second.set("A", "2");
+		other.set("B", "3");
+		first.commit();
+		try {
+			second.commit();
+			assert (false);
+		} catch (ConflictException e) {
+			// first committer wins
+		}
+		other.commit(); // other keys do not conflict
+		assert (memDB.get("A").equals("1"));
+		assert (memDB.get("B").equals("3"));
+		assert (memDB.countValue("2") == 0);
+		try {
+			second.get("A");
+			assert (false);
+		} catch (IllegalStateException e) {
+			// rolled back
+		}
+		memDB.clear();
+	}
+
+	private void delete(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
 }
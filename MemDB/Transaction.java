@@ -0,0 +1,182 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Stack;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A transaction with snapshot isolation, started by
+ * {@link MemDB#transaction()}. It reads the data committed when it started
+ * and its own writes, which are buffered until commit, so readers never block
+ * writers and never see a partial commit. Commit fails with a
+ * {@link ConflictException} if another transaction committed a key this one
+ * wrote since it started.
+ *
+ * The writes are kept in layers, one per nested transaction of a
+ * {@link Session}, each with the change of the value counts its writes make.
+ * Reads look through the layers from the innermost, a nested commit merges
+ * the innermost layer into the one below and a nested rollback drops it.
+ *
+ * Not thread safe, each client thread runs its own transactions. A
+ * transaction must end with commit or rollback, until then the database keeps
+ * the versions it may read.
+ */
+public class Transaction {
+
+	/**
+	 * Written keys, null for deleted ones, and the change of the value counts
+	 * they make
+	 */
+	private static class Layer {
+		final Map<String, String> writes = new HashMap<>();
+		final Map<String, Integer> counts = new HashMap<>();
+	}
+
+	private final MemDB memDB;
+	private final AtomicLong pin; // keeps the versions of the snapshot
+	private final long snapshot; // the commit it reads
+
+	private final Stack<Layer> layers = new Stack<>(); // the innermost on top
+
+	private boolean done;
+
+	Transaction(MemDB memDB, AtomicLong pin) {
+		this.memDB = memDB;
+		this.pin = pin;
+		this.snapshot = pin.get();
+		layers.push(new Layer());
+	}
+
+	/**
+	 * Commits the writes, durably for a durable database. Throws a
+	 * {@link ConflictException} and rolls back if a key written was committed
+	 * by another transaction since this one started.
+	 */
+	public void commit() {
+		check();
+		while (layers.size() > 1) { // nested transactions still open commit with it
+			merge();
+		}
+		end();
+		memDB.commit(this);
+	}
+
+	/**
+	 * Count of a given value as of the snapshot, with the writes of the
+	 * transaction
+	 */
+	public int countValue(String value) {
+		check();
+		int count = memDB.count(value, snapshot);
+		for (Layer layer : layers) {
+			Integer delta = layer.counts.get(value);
+			count += delta == null ? 0 : delta;
+		}
+		return count;
+	}
+
+	public void delete(String key) {
+		set(key, null);
+	}
+
+	/**
+	 * Get the value of a key as of the snapshot, or as written by the
+	 * transaction
+	 */
+	public String get(String key) {
+		check();
+		for (int i = layers.size() - 1; i >= 0; i--) {
+			Map<String, String> writes = layers.get(i).writes;
+			String value = writes.get(key);
+			if (value != null || writes.containsKey(key)) {
+				return value;
+			}
+		}
+		return memDB.read(key, snapshot);
+	}
+
+	/**
+	 * Discards the writes
+	 */
+	public void rollback() {
+		end();
+		memDB.release(pin);
+	}
+
+	/**
+	 * Set the value of a key, a null value deletes it
+	 */
+	public void set(String key, String value) {
+		String current = get(key);
+		Layer layer = layers.peek();
+		layer.writes.put(key, value);
+		count(layer, current, -1);
+		count(layer, value, 1);
+	}
+
+	/**
+	 * Merges the writes of the innermost nested transaction into the one it is
+	 * nested in
+	 */
+	void merge() {
+		check();
+		Layer layer = layers.pop();
+		Layer parent = layers.peek();
+		parent.writes.putAll(layer.writes);
+		for (Map.Entry<String, Integer> count : layer.counts.entrySet()) {
+			parent.counts.merge(count.getKey(), count.getValue(), Transaction::sum);
+		}
+	}
+
+	AtomicLong pin() {
+		return pin;
+	}
+
+	/**
+	 * Discards the writes of the innermost nested transaction
+	 */
+	void pop() {
+		check();
+		layers.pop();
+	}
+
+	/**
+	 * Starts a nested transaction
+	 */
+	void push() {
+		check();
+		layers.push(new Layer());
+	}
+
+	long snapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Returns the writes, once merged into one layer
+	 */
+	Map<String, String> writes() {
+		return layers.peek().writes;
+	}
+
+	private void check() {
+		if (done) {
+			throw new IllegalStateException("Transaction is over");
+		}
+	}
+
+	private static void count(Layer layer, String value, int delta) {
+		if (value != null) {
+			layer.counts.merge(value, delta, Transaction::sum);
+		}
+	}
+
+	private void end() {
+		check();
+		done = true;
+	}
+
+	private static Integer sum(Integer a, Integer b) {
+		return a + b == 0 ? null : a + b; // drops counts back to where they were
+	}
+
+}
@@ -0,0 +1,181 @@
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Map of multi version values by key. Each key holds a chain of the values
+ * committed to it, newest first, so a reader sees the values as of its
+ * snapshot without locks while writers add newer versions. Versions no reader
+ * can see any more are dropped as new ones are added.
+ *
+ * Writers must be serialized by the caller, readers may run concurrently.
+ * Supports a null key.
+ *
+ * @param <T> The value type
+ */
+class VersionedMap<T> {
+
+	/**
+	 * A committed value, null if the key was removed
+	 */
+	private static class Version<T> {
+		final long commit;
+		final T value;
+		volatile Version<T> previous; // dropped once no reader needs it
+
+		Version(long commit, T value, Version<T> previous) {
+			this.commit = commit;
+			this.value = value;
+			this.previous = previous;
+		}
+	}
+
+	private static final Object NULL_KEY = new Object(); // stands in for the null key
+
+	private final ConcurrentHashMap<Object, Version<T>> versions = new ConcurrentHashMap<>();
+
+	// Keys removed at a commit, dropped from the map once no reader can see
+	// the value they had, in commit order
+	private final ConcurrentLinkedQueue<Object[]> removed = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Returns the value of the key as of the snapshot, or null
+	 */
+	T get(String key, long snapshot) {
+		Version<T> version = versions.get(mask(key));
+		while (version != null && version.commit > snapshot) {
+			version = version.previous;
+		}
+		return version == null ? null : version.value;
+	}
+
+	/**
+	 * Returns the commit of the latest value of the key, zero if it never had
+	 * one
+	 */
+	long latestCommit(String key) {
+		Version<T> version = versions.get(mask(key));
+		return version == null ? 0 : version.commit;
+	}
+
+	/**
+	 * Returns the latest value of the key, or null
+	 */
+	T latest(String key) {
+		Version<T> version = versions.get(mask(key));
+		return version == null ? null : version.value;
+	}
+
+	/**
+	 * Adds a new version of the key, null to remove it, and drops the versions
+	 * older than the one the oldest reader sees
+	 *
+	 * @param commit The commit of the new version, newer than all others
+	 * @param oldest The oldest snapshot any reader has
+	 */
+	void put(String key, T value, long commit, long oldest) {
+		Object masked = mask(key);
+		Version<T> latest = versions.get(masked);
+		if ((latest == null || latest.value == null) && value == null) {
+			return; // removed already
+		}
+		Version<T> version = new Version<>(commit, value, latest);
+		prune(version, oldest);
+		versions.put(masked, version);
+		if (value == null) {
+			removed.add(new Object[] { masked, version });
+		}
+	}
+
+	/**
+	 * Drops the removed keys no reader can see any more
+	 *
+	 * @param oldest The oldest snapshot any reader has
+	 */
+	void prune(long oldest) {
+		Object[] head;
+		while ((head = removed.peek()) != null && ((Version<?>) head[1]).commit <= oldest) {
+			removed.poll();
+			versions.remove(head[0], head[1]); // unless written again since
+		}
+	}
+
+	/**
+	 * Returns the entries with a value as of the snapshot, read while writers
+	 * go on
+	 */
+	Iterable<Map.Entry<String, T>> entries(long snapshot) {
+		return () -> new Iterator<Map.Entry<String, T>>() {
+			private final Iterator<Map.Entry<Object, Version<T>>> iterator = versions.entrySet().iterator();
+			private Map.Entry<String, T> next;
+
+			@Override
+			public boolean hasNext() {
+				while (next == null && iterator.hasNext()) {
+					Map.Entry<Object, Version<T>> entry = iterator.next();
+					Version<T> version = entry.getValue();
+					while (version != null && version.commit > snapshot) {
+						version = version.previous;
+					}
+					if (version != null && version.value != null) {
+						next = new AbstractMap.SimpleImmutableEntry<>(unmask(entry.getKey()), version.value);
+					}
+				}
+				return next != null;
+			}
+
+			@Override
+			public Map.Entry<String, T> next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Map.Entry<String, T> entry = next;
+				next = null;
+				return entry;
+			}
+		};
+	}
+
+	/**
+	 * Returns the keys with a latest version, removed or not
+	 */
+	Iterable<String> keys() {
+		return () -> new Iterator<String>() {
+			private final Iterator<Object> iterator = versions.keySet().iterator();
+
+			@Override
+			public boolean hasNext() {
+				return iterator.hasNext();
+			}
+
+			@Override
+			public String next() {
+				return unmask(iterator.next());
+			}
+		};
+	}
+
+	private static Object mask(String key) {
+		return key == null ? NULL_KEY : key;
+	}
+
+	/**
+	 * Drops the versions older than the newest one the oldest reader sees
+	 */
+	private static <T> void prune(Version<T> version, long oldest) {
+		while (version != null && version.commit > oldest) {
+			version = version.previous;
+		}
+		if (version != null) {
+			version.previous = null;
+		}
+	}
+
+	private static String unmask(Object key) {
+		return key == NULL_KEY ? null : (String) key;
+	}
+
+}
@@ -0,0 +1,399 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append only log of database operations for crash recovery. Each record is
+ * its length, a CRC32 of its content, the operation type, then the key and the
+ * value. Records are buffered and written on sync, and concurrent callers of
+ * {@link #sync(long)} share a single {@link FileChannel#force(boolean)}, so
+ * durability does not cost an fsync per operation.
+ *
+ * The log is a sequence of numbered segment files in a directory. A new
+ * segment is started by {@link #rollover()} when a snapshot is taken, and the
+ * segments the snapshot covers are deleted by {@link #truncate(long)}.
+ */
+public class WriteAheadLog implements Closeable {
+
+	/**
+	 * Receives the records of the log in order on replay
+	 */
+	public interface Replay {
+		public void apply(byte type, String key, String value);
+	}
+
+	public static final byte SET = 1;
+	public static final byte DELETE = 2;
+	public static final byte BEGIN = 3;
+	public static final byte COMMIT = 4;
+	public static final byte ROLLBACK = 5;
+	public static final byte CLEAR = 6;
+
+	private static final int HEADER = 8; // record length and checksum
+	private static final int MAX_RECORD = 64 * 1024 * 1024;
+
+	private final Path directory;
+	private FileChannel channel; // the last segment, appended to
+	private long segment;
+	private final CRC32 crc = new CRC32();
+	private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024); // appended but not yet written
+	private long appended; // log position after the last appended record, across segments
+
+	// Group commit, one caller forces the log for everyone waiting on it
+	private final Object syncLock = new Object();
+	private long synced; // log position known to be durable
+	private boolean syncing;
+
+	/**
+	 * Opens the log in the directory, records can be appended once it is
+	 * replayed
+	 *
+	 * @param directory The directory of the log segments
+	 */
+	public WriteAheadLog(Path directory) {
+		this.directory = directory;
+	}
+
+	/**
+	 * Forces the entries of the directory, so files created, renamed or
+	 * deleted in it survive a crash
+	 */
+	public static void force(Path directory) throws IOException {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Returns the path of a log segment
+	 */
+	public static Path path(Path directory, long segment) {
+		return directory.resolve(String.format("%016d.log", segment));
+	}
+
+	/**
+	 * Returns the log segments in the directory in order
+	 */
+	public static List<Long> segments(Path directory) throws IOException {
+		List<Long> segments = new ArrayList<>();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.log")) {
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				if (name.matches("[0-9]{16}\\.log")) {
+					segments.add(Long.parseLong(name.substring(0, 16)));
+				}
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * Appends a record to the log, it is durable once synced
+	 *
+	 * @return The log position after the record, to sync to
+	 */
+	public synchronized long append(byte type, String key, String value) {
+		byte[] keyBytes = bytes(key);
+		byte[] valueBytes = bytes(value);
+		int length = 1 + 4 + (keyBytes == null ? 0 : keyBytes.length) + 4
+				+ (valueBytes == null ? 0 : valueBytes.length);
+		if (buffer.remaining() < HEADER + length) {
+			ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + HEADER + length));
+			buffer.flip();
+			buffer = larger.put(buffer);
+		}
+		int start = buffer.position();
+		buffer.putInt(length);
+		buffer.putInt(0); // checksum, filled in below
+		buffer.put(type);
+		put(keyBytes);
+		put(valueBytes);
+		crc.reset();
+		crc.update(buffer.array(), start + HEADER, length);
+		buffer.putInt(start + 4, (int) crc.getValue());
+		appended += HEADER + length;
+		return appended;
+	}
+
+	/**
+	 * Returns the log position after the last appended record
+	 */
+	public synchronized long appended() {
+		return appended;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			sync(Long.MAX_VALUE);
+			channel.close();
+		}
+	}
+
+	/**
+	 * Replays the complete records of the segments from the given one on in
+	 * order, then truncates any torn or corrupt tail a crash left in the last
+	 * segment so new records follow the last good one. Call once, before
+	 * appending.
+	 *
+	 * @param from   The first segment to replay, the one after the snapshot
+	 *               loaded, or zero for all
+	 * @param replay Receives the records
+	 * @return The number of records replayed
+	 */
+	public long replay(long from, Replay replay) throws IOException {
+		List<Long> segments = new ArrayList<>();
+		for (long segment : segments(directory)) {
+			if (segment >= from) {
+				segments.add(segment);
+			}
+		}
+		long records = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			long expected = i == 0 ? from : segments.get(i - 1) + 1;
+			if (expected > 0 && segments.get(i) != expected) {
+				throw new IOException("Missing log segment " + path(directory, expected));
+			}
+			boolean last = i == segments.size() - 1;
+			FileChannel segmentChannel = FileChannel.open(path(directory, segments.get(i)), StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			try {
+				long size = segmentChannel.size();
+				long[] replayed = replay(segmentChannel, replay);
+				records += replayed[1];
+				appended += replayed[0];
+				if (replayed[0] < size) {
+					if (!last) { // segments before the last were forced whole
+						throw new IOException("Corrupt log segment " + path(directory, segments.get(i)));
+					}
+					segmentChannel.truncate(replayed[0]);
+				}
+				segmentChannel.position(replayed[0]);
+			} finally {
+				if (last) {
+					channel = segmentChannel;
+				} else {
+					segmentChannel.close();
+				}
+			}
+		}
+		if (channel == null) {
+			segment = Math.max(1, from);
+			channel = FileChannel.open(path(directory, segment), StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			force(directory);
+		} else {
+			segment = segments.get(segments.size() - 1);
+		}
+		synchronized (syncLock) {
+			synced = appended;
+		}
+		return records;
+	}
+
+	/**
+	 * Forces the current segment and starts appending to a new one, created
+	 * durably before the segments before it can be truncated. Records appended
+	 * meanwhile go to one segment or the other whole.
+	 *
+	 * @return The new segment, the first one a snapshot of the database now
+	 *         does not cover
+	 */
+	public long rollover() throws IOException {
+		lead();
+		long target = 0;
+		try {
+			FileChannel current;
+			long written;
+			synchronized (this) {
+				written = write();
+				current = channel;
+			}
+			// appends go on into the buffer, only the leader writes it out
+			current.force(false);
+			FileChannel next = FileChannel.open(path(directory, segment + 1), StandardOpenOption.CREATE,
+					StandardOpenOption.READ, StandardOpenOption.WRITE);
+			force(directory);
+			synchronized (this) {
+				channel = next;
+				segment++;
+			}
+			current.close();
+			target = written;
+			return segment;
+		} finally {
+			synced(target);
+		}
+	}
+
+	/**
+	 * Makes the log durable up to the given position. If another caller is
+	 * forcing the log already, waits for it and forces once more only if its
+	 * force did not cover the position, so concurrent committers share forces.
+	 *
+	 * @param position The log position returned by {@link #append}
+	 */
+	public void sync(long position) throws IOException {
+		synchronized (syncLock) {
+			while (synced < position && syncing) {
+				await();
+			}
+			if (synced >= Math.min(position, appended())) {
+				return;
+			}
+			syncing = true;
+		}
+		long target = 0;
+		try {
+			FileChannel forced;
+			long written;
+			synchronized (this) {
+				written = write();
+				forced = channel;
+			}
+			forced.force(false);
+			target = written;
+		} finally {
+			synced(target);
+		}
+	}
+
+	/**
+	 * Deletes the log segments before the given one, once a durable snapshot
+	 * covers them
+	 */
+	public void truncate(long before) throws IOException {
+		for (long segment : segments(directory)) {
+			if (segment < before) {
+				Files.deleteIfExists(path(directory, segment));
+			}
+		}
+	}
+
+	private void await() throws InterruptedIOException {
+		try {
+			syncLock.wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for log sync");
+		}
+	}
+
+	private static byte[] bytes(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Waits for any caller forcing the log, then becomes the one forcing it
+	 */
+	private void lead() throws InterruptedIOException {
+		synchronized (syncLock) {
+			while (syncing) {
+				await();
+			}
+			syncing = true;
+		}
+	}
+
+	private void put(byte[] bytes) {
+		if (bytes == null) {
+			buffer.putInt(-1);
+		} else {
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	/**
+	 * Replays the complete records of a segment
+	 *
+	 * @return The position after the last complete record and the number of
+	 *         records
+	 */
+	private long[] replay(FileChannel channel, Replay replay) throws IOException {
+		long position = 0;
+		long records = 0;
+		DataInputStream in = new DataInputStream(
+				new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+		byte[] record = new byte[0];
+		try {
+			while (true) {
+				int length = in.readInt();
+				int checksum = in.readInt();
+				if (length < 9 || length > MAX_RECORD) {
+					break; // corrupt length
+				}
+				if (record.length < length) {
+					record = new byte[Math.max(length, record.length * 2)];
+				}
+				in.readFully(record, 0, length);
+				crc.reset();
+				crc.update(record, 0, length);
+				if ((int) crc.getValue() != checksum) {
+					break; // torn write
+				}
+				ByteBuffer content = ByteBuffer.wrap(record, 0, length);
+				byte type = content.get();
+				replay.apply(type, string(content), string(content));
+				position += HEADER + length;
+				records++;
+			}
+		} catch (EOFException e) {
+			// end of the segment, or a record cut short by a crash
+		}
+		return new long[] { position, records };
+	}
+
+	private static String string(ByteBuffer content) {
+		int length = content.getInt();
+		if (length < 0) {
+			return null;
+		}
+		String value = new String(content.array(), content.position(), length, StandardCharsets.UTF_8);
+		content.position(content.position() + length);
+		return value;
+	}
+
+	/**
+	 * Ends forcing the log, durable up to the target position if the force
+	 * succeeded
+	 */
+	private void synced(long target) {
+		synchronized (syncLock) {
+			syncing = false;
+			synced = Math.max(synced, target);
+			syncLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Writes the buffered records to the channel
+	 *
+	 * @return The log position written up to
+	 */
+	private synchronized long write() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+		return appended;
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.hackorama.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading a batch of keys one at a time compared to one {@link Cache#getAll}
+ * call, on a {@link ConcurrentDataCache} so the batch also saves locking.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BulkBenchmark {
+
+    @Param({ "frequency", "recentAccess", "tinyLfu", "arc" })
+    String policy;
+
+    @Param({ "16", "256" })
+    int batch;
+
+    private Cache cache;
+    private List<List<String>> batches;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        Workload workload = new Workload(65536, 0.9, "zipfian", 42);
+        cache = Workload.prefill(new ConcurrentDataCache().size(65536).with(() -> Workload.policy(policy)), workload);
+        batches = new ArrayList<>();
+        for (int start = 0; start + batch <= workload.sequence.length; start += batch) {
+            List<String> keys = new ArrayList<>(batch);
+            for (int i = start; i < start + batch; i++) {
+                keys.add(workload.keys[workload.sequence[i]]);
+            }
+            batches.add(keys);
+        }
+    }
+
+    @Benchmark
+    public void getEach(Blackhole blackhole) {
+        for (String key : next()) {
+            blackhole.consume(cache.get(key));
+        }
+    }
+
+    @Benchmark
+    public Map<String, String> getAll() {
+        return cache.getAll(next());
+    }
+
+    private List<String> next() {
+        return batches.get(cursor++ % batches.size());
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.hackorama.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single threaded {@link DataCache} operations across policies, cache sizes,
+ * hit ratios and key distributions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    @Param({ "frequency", "recentAccess", "recentAdd", "size", "tinyLfu", "arc" })
+    String policy;
+
+    @Param({ "1024", "65536" })
+    int size;
+
+    @Param({ "0.5", "0.9" })
+    double hitRatio;
+
+    @Param({ "uniform", "zipfian" })
+    String distribution;
+
+    private Cache cache;
+    private Workload workload;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        workload = new Workload(size, hitRatio, distribution, 42);
+        cache = Workload.prefill(new DataCache().size(size).with(Workload.policy(policy)), workload);
+    }
+
+    @Benchmark
+    public String get() {
+        return cache.get(workload.keys[workload.sequence[cursor++ & Workload.MASK]]);
+    }
+
+    @Benchmark
+    public void put() {
+        int index = workload.sequence[cursor++ & Workload.MASK];
+        cache.put(workload.keys[index], workload.values[index]);
+    }
+
+    /**
+     * Removes and adds back the key, so the cache stays full and removes keep
+     * hitting cached keys at the configured ratio.
+     */
+    @Benchmark
+    public void removeAndPut() {
+        int index = workload.sequence[cursor++ & Workload.MASK];
+        cache.remove(workload.keys[index]);
+        cache.put(workload.keys[index], workload.values[index]);
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.hackorama.cache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Shared {@link ConcurrentDataCache} operations at increasing thread counts,
+ * run a single thread count with -t or include one of the nested benchmarks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class ConcurrentCacheBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SharedCache {
+
+        @Param({ "frequency", "recentAccess", "recentAdd", "size", "tinyLfu" })
+        String policy;
+
+        @Param({ "65536" })
+        int size;
+
+        @Param({ "0.9" })
+        double hitRatio;
+
+        @Param({ "uniform", "zipfian" })
+        String distribution;
+
+        Cache cache;
+        Workload workload;
+
+        @Setup
+        public void setup() {
+            workload = new Workload(size, hitRatio, distribution, 42);
+            cache = Workload.prefill(new ConcurrentDataCache().size(size).with(() -> Workload.policy(policy)),
+                    workload);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private static final AtomicInteger threads = new AtomicInteger();
+        int position;
+
+        @Setup
+        public void setup() {
+            position = (threads.getAndIncrement() * 7919) & Workload.MASK; // each thread starts at a different place
+        }
+    }
+
+    @Benchmark
+    public String get(SharedCache shared, Cursor cursor) {
+        return shared.cache.get(shared.workload.keys[shared.workload.sequence[cursor.position++ & Workload.MASK]]);
+    }
+
+    @Benchmark
+    public void put(SharedCache shared, Cursor cursor) {
+        int index = shared.workload.sequence[cursor.position++ & Workload.MASK];
+        shared.cache.put(shared.workload.keys[index], shared.workload.values[index]);
+    }
+
+    @Benchmark
+    public void removeAndPut(SharedCache shared, Cursor cursor) {
+        int index = shared.workload.sequence[cursor.position++ & Workload.MASK];
+        shared.cache.remove(shared.workload.keys[index]);
+        shared.cache.put(shared.workload.keys[index], shared.workload.values[index]);
+    }
+
+    @Threads(1)
+    public static class OneThread extends ConcurrentCacheBenchmark {
+    }
+
+    @Threads(4)
+    public static class FourThreads extends ConcurrentCacheBenchmark {
+    }
+
+    @Threads(16)
+    public static class SixteenThreads extends ConcurrentCacheBenchmark {
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.hackorama.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Numeric keys in a {@link LongKeyCache} compared to the same keys turned
+ * into strings for a {@link DataCache}, run with {@code -prof gc} to see the
+ * allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongKeyBenchmark {
+
+    private LongKeyCache longKeyCache;
+    private DataCache stringKeyCache;
+    private Workload workload;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        workload = new Workload(1024, 0.9, "zipfian", 42);
+        longKeyCache = new LongKeyCache().size(1024).with(LongKeyCache.Eviction.RECENT_ACCESS);
+        stringKeyCache = new DataCache().size(1024).with(Workload.policy("recentAccess"));
+        for (int i = workload.keys.length - 1; i >= 0; i--) {
+            longKeyCache.put(i, workload.values[i]);
+            stringKeyCache.put(String.valueOf(i), workload.values[i]);
+        }
+    }
+
+    @Benchmark
+    public String longKeyGet() {
+        return longKeyCache.get(workload.sequence[cursor++ & Workload.MASK]);
+    }
+
+    @Benchmark
+    public String stringKeyGet() {
+        return stringKeyCache.get(String.valueOf(workload.sequence[cursor++ & Workload.MASK]));
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.hackorama.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hackorama.cache.policy.Policy;
+
+/**
+ * Policy tracking alone, without the cache around it. Run with
+ * {@code -prof gc} to check that steady state tracking allocates nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolicyBenchmark {
+
+    @Param({ "frequency", "recentAccess", "recentAdd", "size", "tinyLfu", "arc" })
+    String policy;
+
+    private Policy tracking;
+    private Workload workload;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        workload = new Workload(1024, 0.9, "zipfian", 42);
+        tracking = Workload.policy(policy).capacity(1024);
+        for (int i = workload.keys.length - 1; i >= 0; i--) {
+            tracking.trackWrites(workload.keys[i], workload.values[i]);
+            tracking.trackReads(workload.keys[i], workload.values[i]);
+        }
+    }
+
+    @Benchmark
+    public void trackReads() {
+        int index = workload.sequence[cursor++ & Workload.MASK];
+        tracking.trackReads(workload.keys[index], workload.values[index]);
+    }
+
+    /**
+     * Tracks a write and a read of the key and evicts one key, so the number
+     * of tracked keys stays about the same.
+     */
+    @Benchmark
+    public String trackWritesAndEvict() {
+        int index = workload.sequence[cursor++ & Workload.MASK];
+        tracking.trackWrites(workload.keys[index], workload.values[index]);
+        tracking.trackReads(workload.keys[index], workload.values[index]);
+        return tracking.evict();
+    }
+
+}
@@ -0,0 +1,225 @@
+package com.hackorama.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.hackorama.cache.stats.CacheStats;
+
+/**
+ * Replays an access trace through a {@link DataCache} for each policy and cache
+ * size, reading through the cache so a miss adds the key, and reports the hit
+ * ratio, throughput and sampled policy update time of each.
+ *
+ * The trace is streamed once and fed to all the caches a batch at a time, so
+ * traces larger than memory work. Text traces hold a key per line, the first
+ * whitespace separated field, and binary traces a sequence of 8 byte big
+ * endian numeric keys. Traces ending in .gz are decompressed on the fly.
+ *
+ * <pre>
+ * $ ./gradlew simulate --args='trace.txt --sizes=1000,10000 --policies=frequency,tinyLfu,arc'
+ * $ ./gradlew simulate --args='trace.bin.gz --format=binary'
+ * </pre>
+ */
+public class Simulator {
+
+    private static final int BATCH = 4096;
+    private static final long PROGRESS = 10_000_000;
+    private static final String[] POLICIES = { "frequency", "recentAccess", "recentAdd", "size", "tinyLfu", "arc" };
+    private static final String USAGE = "Usage: Simulator <trace> [--format=text|binary] [--sizes=1000,10000,...]"
+            + " [--policies=" + String.join(",", POLICIES) + "]";
+
+    /**
+     * Streams the keys of a trace.
+     */
+    private interface Trace extends Closeable {
+        /**
+         * Returns the next key, or null at the end of the trace.
+         */
+        String next() throws IOException;
+    }
+
+    /**
+     * One cache replaying the trace, with its hits and time so far.
+     */
+    private static class Run {
+        private final String policy;
+        private final long size;
+        private final DataCache cache;
+        private long hits;
+        private long nanos;
+
+        private Run(String policy, long size) {
+            this.policy = policy;
+            this.size = size;
+            this.cache = new DataCache().size(size).with(Workload.policy(policy)).recordStats();
+        }
+    }
+
+    private final List<Run> runs = new ArrayList<>();
+    private long accesses;
+
+    Simulator(String[] policies, long[] sizes) {
+        for (String policy : policies) {
+            for (long size : sizes) {
+                runs.add(new Run(policy, size));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path path = null;
+        boolean binary = false;
+        long[] sizes = { 1_000, 10_000, 100_000 };
+        String[] policies = POLICIES;
+        Simulator simulator;
+        try {
+            for (String arg : args) {
+                if (arg.equals("--format=text") || arg.equals("--format=binary")) {
+                    binary = arg.endsWith("binary");
+                } else if (arg.startsWith("--sizes=")) {
+                    sizes = Arrays.stream(arg.substring("--sizes=".length()).split(",")).mapToLong(Long::parseLong)
+                            .toArray();
+                } else if (arg.startsWith("--policies=")) {
+                    policies = arg.substring("--policies=".length()).split(",");
+                } else if (arg.startsWith("--") || path != null) {
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+                } else {
+                    path = Paths.get(arg);
+                }
+            }
+            if (path == null) {
+                throw new IllegalArgumentException("No trace");
+            }
+            simulator = new Simulator(policies, sizes);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        try (Trace trace = binary ? binary(open(path)) : text(open(path))) {
+            simulator.replay(trace, System.err);
+        }
+        simulator.report(System.out);
+    }
+
+    /**
+     * Reads the trace a batch at a time and replays each batch through every
+     * cache, timing the whole batch so the timer does not weigh on each access.
+     */
+    void replay(Trace trace, PrintStream progress) throws IOException {
+        String[] batch = new String[BATCH];
+        int length;
+        do {
+            length = 0;
+            String key;
+            while (length < BATCH && (key = trace.next()) != null) {
+                batch[length++] = key;
+            }
+            for (Run run : runs) {
+                long hits = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < length; i++) {
+                    if (run.cache.get(batch[i]) != null) {
+                        hits++;
+                    } else {
+                        run.cache.put(batch[i], batch[i]);
+                    }
+                }
+                run.nanos += System.nanoTime() - start;
+                run.hits += hits;
+            }
+            if ((accesses + length) / PROGRESS > accesses / PROGRESS) {
+                progress.printf("%,d accesses%n", accesses + length);
+            }
+            accesses += length;
+        } while (length == BATCH);
+    }
+
+    /**
+     * Prints a row for each policy and size, sorted by policy then size so
+     * the rows of a policy form its hit ratio curve.
+     */
+    void report(PrintStream out) {
+        out.printf("%-14s %12s %12s %10s %12s %12s%n", "policy", "size", "accesses", "hit ratio", "ops/s", "policy ns");
+        for (Run run : runs) {
+            CacheStats stats = run.cache.stats();
+            double hitRatio = accesses == 0 ? 0 : (double) run.hits / accesses;
+            double throughput = run.nanos == 0 ? 0 : accesses * 1e9 / run.nanos;
+            out.printf("%-14s %12d %12d %10.4f %12.0f %12.1f%n", run.policy, run.size, accesses, hitRatio, throughput,
+                    stats.averagePolicyNanos());
+        }
+    }
+
+    private static InputStream open(Path path) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        return path.toString().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    private static Trace binary(InputStream in) {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        return new Trace() {
+            @Override
+            public String next() throws IOException {
+                try {
+                    return Long.toString(data.readLong());
+                } catch (EOFException e) {
+                    return null;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                data.close();
+            }
+        };
+    }
+
+    private static Trace text(InputStream in) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        return new Trace() {
+            @Override
+            public String next() throws IOException {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        int space = indexOfWhitespace(line);
+                        return space < 0 ? line : line.substring(0, space);
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+
+    private static int indexOfWhitespace(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
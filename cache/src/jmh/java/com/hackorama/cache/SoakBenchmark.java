@@ -0,0 +1,77 @@
+package com.hackorama.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.hackorama.cache.policy.Policy;
+
+/**
+ * Long running key churn, every key is new and read before it is added, half
+ * are never added, and keys are read again, removed or left to expire before
+ * the cache fills up, so no evictions clean up after them. Any policy metadata
+ * kept for keys no longer cached piles up over time. After each iteration the
+ * tracked keys and the heap used after a full collection are printed, both
+ * must stay flat, and the run fails if the policy tracks more keys than its
+ * bound.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 10, time = 30)
+@Fork(value = 1, jvmArgsAppend = "-Xmx256m")
+public class SoakBenchmark {
+
+    private static final int SIZE = 10_000;
+    private static final long TIME_TO_LIVE = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Param({ "frequency", "recentAccess", "recentAdd", "size", "tinyLfu", "arc" })
+    String policy;
+
+    private Policy tracking;
+    private Cache cache;
+    private long next;
+
+    @Setup
+    public void setup() {
+        tracking = Workload.policy(policy);
+        cache = new DataCache().size(SIZE).with(tracking).expireAfterWrite(TIME_TO_LIVE, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public String churn() {
+        long id = next++;
+        String key = Long.toString(id);
+        if (cache.get(key) == null && (id & 1) == 0) { // odd keys are never added, like lookups of missing rows
+            cache.put(key, key);
+        }
+        cache.remove(Long.toString(id - SIZE / 2)); // invalidations keep the cache from filling up and evicting
+        return cache.get(Long.toString(id - (id & 1023)));
+    }
+
+    @TearDown(Level.Iteration)
+    public void check() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%n%s tracks %,d keys after %,d operations, heap used %,d KB%n", policy, tracking.size(),
+                next, (runtime.totalMemory() - runtime.freeMemory()) / 1024);
+        // cached keys, as many ghosts and twice the cache size for ARC ghost lists
+        if (tracking.size() > 3L * SIZE) {
+            throw new IllegalStateException("Policy metadata grew to " + tracking.size() + " keys");
+        }
+    }
+
+}
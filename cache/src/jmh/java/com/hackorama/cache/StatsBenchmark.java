@@ -0,0 +1,56 @@
+package com.hackorama.cache;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Overhead of recording statistics on {@link DataCache} reads and writes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatsBenchmark {
+
+    @Param({ "false", "true" })
+    boolean recordStats;
+
+    private DataCache cache;
+    private Workload workload;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        workload = new Workload(1024, 0.9, "zipfian", 42);
+        cache = new DataCache().size(1024).with(Workload.policy("recentAccess"));
+        if (recordStats) {
+            cache.recordStats();
+        }
+        Workload.prefill(cache, workload);
+    }
+
+    @Benchmark
+    public String get() {
+        return cache.get(workload.keys[workload.sequence[cursor++ & Workload.MASK]]);
+    }
+
+    @Benchmark
+    public void put() {
+        int index = workload.sequence[cursor++ & Workload.MASK];
+        cache.put(workload.keys[index], workload.values[index]);
+    }
+
+}
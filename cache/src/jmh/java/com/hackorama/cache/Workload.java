@@ -0,0 +1,116 @@
+package com.hackorama.cache;
+
+import java.util.Random;
+
+import com.hackorama.cache.policy.ArcPolicy;
+import com.hackorama.cache.policy.FrequencyPolicy;
+import com.hackorama.cache.policy.Policy;
+import com.hackorama.cache.policy.RecentAccessPolicy;
+import com.hackorama.cache.policy.RecentAddPolicy;
+import com.hackorama.cache.policy.SizePolicy;
+import com.hackorama.cache.policy.TinyLfuPolicy;
+
+/**
+ * Pre generated keys, values and access sequences for the benchmarks, so the
+ * measured operations do not include key generation.
+ */
+class Workload {
+
+    static final int LENGTH = 1 << 16; // power of two for cheap cursor wrap
+    static final int MASK = LENGTH - 1;
+
+    final String[] keys;
+    final String[] values;
+    final int[] sequence;
+
+    /**
+     * Creates a workload over a key space sized so that a cache of the given
+     * size holds the given ratio of the keys, which is the hit ratio for the
+     * uniform distribution and a lower bound for the zipfian distribution.
+     */
+    Workload(int size, double hitRatio, String distribution, long seed) {
+        int keySpace = (int) Math.ceil(size / hitRatio);
+        keys = new String[keySpace];
+        values = new String[keySpace];
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < keySpace; i++) {
+            keys[i] = "key:" + i;
+            value.setLength(0);
+            for (int j = 0; j <= i % 64; j++) { // varied sizes for the size policy
+                value.append('x');
+            }
+            values[i] = value.toString();
+        }
+        Random random = new Random(seed);
+        sequence = "zipfian".equals(distribution) ? zipfian(keySpace, random) : uniform(keySpace, random);
+    }
+
+    static Policy policy(String name) {
+        switch (name) {
+        case "frequency":
+            return new FrequencyPolicy();
+        case "recentAccess":
+            return new RecentAccessPolicy();
+        case "recentAdd":
+            return new RecentAddPolicy();
+        case "size":
+            return new SizePolicy();
+        case "tinyLfu":
+            return new TinyLfuPolicy();
+        case "arc":
+            return new ArcPolicy();
+        default:
+            throw new IllegalArgumentException("Unknown policy " + name);
+        }
+    }
+
+    /**
+     * Adds and reads every key, in reverse so the low index keys which are the
+     * hot keys for the zipfian distribution are the ones left in the cache.
+     */
+    static Cache prefill(Cache cache, Workload workload) {
+        for (int i = workload.keys.length - 1; i >= 0; i--) {
+            cache.put(workload.keys[i], workload.values[i]);
+            cache.get(workload.keys[i]);
+        }
+        return cache;
+    }
+
+    private static int[] uniform(int keySpace, Random random) {
+        int[] sequence = new int[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            sequence[i] = random.nextInt(keySpace);
+        }
+        return sequence;
+    }
+
+    /**
+     * Zipfian distribution with the usual 0.99 skew, sampled from the
+     * cumulative distribution by binary search.
+     */
+    private static int[] zipfian(int keySpace, Random random) {
+        double[] cumulative = new double[keySpace];
+        double sum = 0;
+        for (int i = 0; i < keySpace; i++) {
+            sum += 1 / Math.pow(i + 1, 0.99);
+            cumulative[i] = sum;
+        }
+        int[] sequence = new int[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            double target = random.nextDouble() * sum;
+            int low = 0;
+            int high = keySpace - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            sequence[i] = low;
+        }
+        return sequence;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.hackorama.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A cache returning futures, so callers compose cache access into
+ * {@link CompletableFuture} pipelines instead of blocking on loads.
+ */
+public interface AsyncCache {
+    /**
+     * Removes all elements from this cache, loads and changes in flight are
+     * dropped.
+     */
+    public void clear();
+
+    /**
+     * Returns the value for the specified key from this cache, or starts
+     * loading it with the loader if this cache does not contain a value for
+     * the key, sharing the load with other callers until it completes. A null
+     * value is returned but not cached.
+     *
+     * @param key    the key whose value to be returned
+     * @param loader starts loading the value for the key
+     * @return the value for the key
+     */
+    public CompletableFuture<String> computeIfAbsentAsync(String key,
+            Function<String, CompletableFuture<String>> loader);
+
+    /**
+     * Returns the value for the specified key from this cache, or null if this
+     * cache does not contain a value for the key, waiting for a load or change
+     * of the key in flight.
+     *
+     * @param key the key whose value to be returned
+     * @return the value for the key
+     */
+    public CompletableFuture<String> getAsync(String key);
+
+    /**
+     * Adds the specified key and value to this cache, any old value for the
+     * same key will be replaced. The value is returned for the key right away.
+     *
+     * @param key   the key to be added
+     * @param value the value to be added
+     * @return completes once the value is cached
+     */
+    public CompletableFuture<Void> putAsync(String key, String value);
+
+    /**
+     * Adds the specified key and value to this cache, expiring after the given
+     * time to live, any old value for the same key will be replaced.
+     *
+     * @param key      the key to be added
+     * @param value    the value to be added
+     * @param duration the time to live
+     * @param unit     the unit of the time to live
+     * @return completes once the value is cached
+     */
+    public CompletableFuture<Void> putAsync(String key, String value, long duration, TimeUnit unit);
+
+    /**
+     * Removes the key and its value from this cache, no value is returned for
+     * the key right away.
+     *
+     * @param key the key whose value should be removed
+     * @return completes once the value is removed
+     */
+    public CompletableFuture<Void> removeAsync(String key);
+
+    /**
+     * Returns a {@link Cache} view of this cache, blocking on each operation
+     * until it completes, for callers not yet using futures.
+     */
+    public default Cache synchronous() {
+        return new SynchronousCache(this);
+    }
+
+}
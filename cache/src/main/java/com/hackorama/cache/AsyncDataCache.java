@@ -0,0 +1,200 @@
+package com.hackorama.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * An {@link AsyncCache} over a thread safe cache, like a
+ * {@link ConcurrentDataCache}. Loads and changes in flight are kept as futures
+ * by key, so reads see them right away and concurrent loads of a key share one
+ * future, while the underlying cache is updated on the executor. Callers never
+ * wait for a load, a put or the evictions it causes, only cached values are
+ * read on the calling thread.
+ *
+ * Changes of a key are applied in the order they were made, a change or load
+ * replaced by a later one before it reached the underlying cache is dropped.
+ *
+ * <pre>
+ * AsyncCache users = new AsyncDataCache(new ConcurrentDataCache().size(1024));
+ * users.computeIfAbsentAsync(id, key -&gt; database.findAsync(key)).thenAccept(user -&gt; ...);
+ * </pre>
+ */
+public class AsyncDataCache implements AsyncCache {
+
+    private static final int STRIPES = 64; // a power of two
+
+    private final Cache cache;
+    private final ConcurrentMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final Object[] stripes = new Object[STRIPES]; // order the updates of a key
+    private Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * @param cache the thread safe cache holding the values
+     */
+    public AsyncDataCache(Cache cache) {
+        this.cache = cache;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    @Override
+    public void clear() {
+        inFlight.clear();
+        cache.clear();
+    }
+
+    /**
+     * Returns the cached value, or the load of the key in flight, or starts a
+     * load. The loaded value is cached on the executor before the returned
+     * future completes, and a failed load is not cached. A remove of the key
+     * in flight is not a load, a load is started and the key is removed if it
+     * fails.
+     */
+    @Override
+    public CompletableFuture<String> computeIfAbsentAsync(String key,
+            Function<String, CompletableFuture<String>> loader) {
+        CompletableFuture<String> load = new CompletableFuture<>();
+        CompletableFuture<String> removal;
+        while (true) {
+            CompletableFuture<String> future = inFlight.get(key);
+            if (future == null) {
+                String value = cache.get(key);
+                if (value != null) {
+                    return CompletableFuture.completedFuture(value);
+                }
+                if (inFlight.putIfAbsent(key, load) == null) {
+                    removal = null;
+                    break;
+                }
+            } else if (removing(future)) {
+                if (inFlight.replace(key, future, load)) { // the load replaces the remove
+                    removal = future;
+                    break;
+                }
+            } else {
+                return future;
+            }
+        }
+        if (removal == null) {
+            String value = cache.get(key); // put by another thread since the miss
+            if (value != null) {
+                inFlight.remove(key, load);
+                load.complete(value);
+                return load;
+            }
+        }
+        Runnable failed = removal == null ? () -> { } : () -> cache.remove(key);
+        try {
+            loader.apply(key).whenCompleteAsync((loaded, error) -> {
+                try {
+                    if (error == null && loaded != null) {
+                        apply(key, load, () -> cache.put(key, loaded));
+                    } else {
+                        apply(key, load, failed);
+                    }
+                } catch (RuntimeException e) {
+                    inFlight.remove(key, load);
+                    load.completeExceptionally(e);
+                    return;
+                }
+                if (error == null) {
+                    load.complete(loaded);
+                } else {
+                    load.completeExceptionally(error);
+                }
+            }, executor);
+        } catch (RuntimeException e) { // the loader failed to start, or the executor is shut down
+            try {
+                apply(key, load, failed);
+            } finally {
+                inFlight.remove(key, load);
+                load.completeExceptionally(e);
+            }
+        }
+        return load;
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(String key) {
+        CompletableFuture<String> future = inFlight.get(key);
+        return future == null ? CompletableFuture.completedFuture(cache.get(key)) : future;
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, String value) {
+        return change(key, value, () -> cache.put(key, value));
+    }
+
+    @Override
+    public CompletableFuture<Void> putAsync(String key, String value, long duration, TimeUnit unit) {
+        return change(key, value, () -> cache.put(key, value, duration, unit));
+    }
+
+    @Override
+    public CompletableFuture<Void> removeAsync(String key) {
+        return change(key, null, () -> cache.remove(key));
+    }
+
+    /**
+     * Sets the executor updating the underlying cache, defaults to the common
+     * fork join pool.
+     */
+    public AsyncDataCache executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Runs the update of the underlying cache if the future is still the
+     * latest load or change of the key, and drops the future. Updates of a key
+     * are ordered by its stripe lock, outside the map, so a later change never
+     * runs its update before an earlier one finishes.
+     */
+    private void apply(String key, CompletableFuture<String> future, Runnable update) {
+        synchronized (stripes[key.hashCode() & (STRIPES - 1)]) {
+            if (inFlight.get(key) == future) {
+                update.run();
+                inFlight.remove(key, future);
+            }
+        }
+    }
+
+    /**
+     * Returns true for the future of a remove in flight, a change to no value.
+     */
+    private static boolean removing(CompletableFuture<String> future) {
+        return future.isDone() && !future.isCompletedExceptionally() && future.join() == null;
+    }
+
+    /**
+     * Makes the new value of the key visible right away and updates the
+     * underlying cache on the executor.
+     */
+    private CompletableFuture<Void> change(String key, String value, Runnable update) {
+        CompletableFuture<String> change = CompletableFuture.completedFuture(value);
+        inFlight.put(key, change);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    apply(key, change, update);
+                    done.complete(null);
+                } catch (RuntimeException e) {
+                    inFlight.remove(key, change);
+                    done.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) { // the executor is shut down
+            inFlight.remove(key, change);
+            done.completeExceptionally(e);
+        }
+        return done;
+    }
+
+}
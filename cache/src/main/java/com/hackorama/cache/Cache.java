@@ -1,5 +1,13 @@
 package com.hackorama.cache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
 /**
  * A cache with configurable {@link com.hackorama.cache.policy.PolicyInterface}
  */
@@ -9,6 +17,71 @@ public interface Cache {
      */
     public void clear();
 
+    /**
+     * Replaces the value for the specified key with the value computed from
+     * the key and the current value, null if there is none, and returns the
+     * new value. A null result removes the key. The default implementation is
+     * a separate get and put or remove, implementations may make it atomic.
+     *
+     * @param key       the key whose value to be computed
+     * @param remapping computes the new value from the key and current value
+     * @return the new value, or null if there is none
+     */
+    public default String compute(String key, BiFunction<String, String, String> remapping) {
+        String value = remapping.apply(key, get(key));
+        if (value == null) {
+            remove(key);
+        } else {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value for the specified key, or adds and returns the value
+     * computed from the key if there is none. A null result adds nothing.
+     *
+     * @param key     the key whose value to be returned
+     * @param mapping computes the value from the key
+     * @return the current or computed value, or null if there is none
+     * @see #compute(String, BiFunction)
+     */
+    public default String computeIfAbsent(String key, Function<String, String> mapping) {
+        String value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = mapping.apply(key);
+        if (value != null) {
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Replaces the value for the specified key, if there is one, with the
+     * value computed from the key and the current value. A null result
+     * removes the key.
+     *
+     * @param key       the key whose value to be computed
+     * @param remapping computes the new value from the key and current value
+     * @return the new value, or null if there is none
+     * @see #compute(String, BiFunction)
+     */
+    public default String computeIfPresent(String key, BiFunction<String, String, String> remapping) {
+        String value = get(key);
+        if (value == null) {
+            return null;
+        }
+        value = remapping.apply(key, value);
+        if (value == null) {
+            remove(key);
+        } else {
+            put(key, value);
+        }
+        return value;
+    }
+
     /**
      * Returns the value for the specified key from this cache, or null if this
      * cache do not contain a value for the key.
@@ -18,6 +91,54 @@ public interface Cache {
      */
     public String get(String key);
 
+    /**
+     * Returns the values for the specified keys from this cache, keys this
+     * cache do not contain a value for are left out.
+     *
+     * @param keys the keys whose values to be returned
+     * @return the values by key
+     */
+    public default Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> values = new HashMap<>();
+        for (String key : keys) {
+            String value = get(key);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Adds the specified value for the key if there is none, or replaces the
+     * current value with the one computed from the current and specified
+     * values. A null result removes the key.
+     *
+     * @param key       the key whose value to be merged
+     * @param value     the value to be added or merged
+     * @param remapping computes the new value from the current and specified
+     *                  values
+     * @return the new value, or null if there is none
+     * @see #compute(String, BiFunction)
+     */
+    public default String merge(String key, String value, BiFunction<String, String, String> remapping) {
+        Objects.requireNonNull(value);
+        return compute(key, (k, current) -> current == null ? value : remapping.apply(current, value));
+    }
+
+    /**
+     * Returns the value for the specified key from this cache like
+     * {@link #get(String)}, without tracking the read for eviction or
+     * recording it in the statistics. The default implementation is
+     * {@link #get(String)}.
+     *
+     * @param key the key whose value to be returned
+     * @return the value for the key
+     */
+    public default String peek(String key) {
+        return get(key);
+    }
+
     /**
      * Adds the specified key and value to this cache, any old value for the same key
      * will be replaced.
@@ -27,10 +148,48 @@ public interface Cache {
      */
     public void put(String key, String value);
 
+    /**
+     * Adds the specified key and value to this cache, expiring after the given
+     * time to live, any old value for the same key will be replaced. The
+     * default implementation throws an {@link UnsupportedOperationException},
+     * for caches without expiry.
+     *
+     * @param key      the key to be added
+     * @param value    the value to be added
+     * @param duration the time to live
+     * @param unit     the unit of the time to live
+     */
+    public default void put(String key, String value, long duration, TimeUnit unit) {
+        throw new UnsupportedOperationException("Cache does not expire elements");
+    }
+
+    /**
+     * Adds all the specified keys and values to this cache, any old values for
+     * the same keys will be replaced.
+     *
+     * @param entries the keys and values to be added
+     */
+    public default void putAll(Map<String, String> entries) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
     /**
      * Removes the key and its value from this cache.
      *
      * @param key the key whose value should be removed
      */
     public void remove(String key);
+
+    /**
+     * Removes the keys and their values from this cache.
+     *
+     * @param keys the keys whose values should be removed
+     */
+    public default void removeAll(Collection<String> keys) {
+        for (String key : keys) {
+            remove(key);
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package com.hackorama.cache;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes cache changes to the backing store, so the cache and the store do not
+ * drift. Used by {@link DataCache#writeThrough(CacheWriter)} to write each
+ * change before the cache is updated, or wrapped in a {@link WriteBehind} to
+ * write batches of changes later.
+ */
+public interface CacheWriter {
+
+    /**
+     * Writes the value for the key to the store.
+     *
+     * @param key   the key of the element
+     * @param value the value of the element
+     */
+    public void write(String key, String value);
+
+    /**
+     * Deletes the key from the store.
+     *
+     * @param key the key of the element
+     */
+    public void delete(String key);
+
+    /**
+     * Writes the values for the keys to the store, override to write them
+     * in one call.
+     *
+     * @param entries the keys and values to write
+     */
+    public default void writeAll(Map<String, String> entries) {
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            write(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Deletes the keys from the store, override to delete them in one call.
+     *
+     * @param keys the keys to delete
+     */
+    public default void deleteAll(Collection<String> keys) {
+        for (String key : keys) {
+            delete(key);
+        }
+    }
+
+}
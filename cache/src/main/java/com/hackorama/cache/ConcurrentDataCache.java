@@ -0,0 +1,475 @@
+package com.hackorama.cache;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import com.hackorama.cache.policy.FrequencyPolicy;
+import com.hackorama.cache.policy.Policy;
+import com.hackorama.cache.stats.CacheStats;
+import com.hackorama.cache.stats.StatsCounter;
+
+/**
+ * A thread safe cache split into segments by key hash, each segment is a
+ * {@link DataCache} with its own policy and its own lock. Threads working on
+ * keys in different segments do not contend, and since eviction happens within
+ * a segment the eviction order across the whole cache is approximate.
+ *
+ * Configure the cache before sharing it between threads.
+ */
+public class ConcurrentDataCache implements Cache {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private DataCache[] segments;
+    private Supplier<Policy> policy = FrequencyPolicy::new;
+    private long size = 10;
+    private int concurrency = DEFAULT_SEGMENTS;
+    private LongSupplier ticker = System::nanoTime;
+    private long expireAfterWrite;
+    private long expireAfterAccess;
+    private Weigher weigher;
+    private long maximumWeight = Long.MAX_VALUE;
+    private long offHeapBytes; // zero for heap storage
+    private long maximumGhosts = -1; // the segment size unless set
+    private long secondLevelSize; // zero for no second level
+    private long secondLevelBytes;
+    private Path secondLevelDirectory;
+    private StatsCounter stats; // shared by all segments, null unless recording
+    private CacheWriter writer; // shared by all segments, null unless writing through
+    private WriteBehind writeBehind; // shared by all segments, null unless writing behind
+
+    public ConcurrentDataCache() {
+        segment();
+    }
+
+    public ConcurrentDataCache(long size) {
+        this.size = size;
+        segment();
+    }
+
+    @Override
+    public void clear() {
+        for (DataCache segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Computes the new value atomically, holding the lock of the key's
+     * segment, so the function should be quick and must not use this cache.
+     */
+    @Override
+    public String compute(String key, BiFunction<String, String, String> remapping) {
+        DataCache segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.compute(key, remapping);
+        }
+    }
+
+    /**
+     * Computes a missing value atomically, see
+     * {@link #compute(String, BiFunction)}.
+     */
+    @Override
+    public String computeIfAbsent(String key, Function<String, String> mapping) {
+        DataCache segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.computeIfAbsent(key, mapping);
+        }
+    }
+
+    /**
+     * Computes a present value atomically, see
+     * {@link #compute(String, BiFunction)}.
+     */
+    @Override
+    public String computeIfPresent(String key, BiFunction<String, String, String> remapping) {
+        DataCache segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.computeIfPresent(key, remapping);
+        }
+    }
+
+    @Override
+    public String get(String key) {
+        DataCache segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * Returns the values for the keys, taking the lock of each segment once
+     * for all its keys.
+     */
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        List<List<String>> batches = batches(keys);
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < segments.length; i++) {
+            if (!batches.get(i).isEmpty()) {
+                synchronized (segments[i]) {
+                    values.putAll(segments[i].getAll(batches.get(i)));
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Merges the value atomically, see {@link #compute(String, BiFunction)}.
+     */
+    @Override
+    public String merge(String key, String value, BiFunction<String, String, String> remapping) {
+        DataCache segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.merge(key, value, remapping);
+        }
+    }
+
+    @Override
+    public String peek(String key) {
+        DataCache segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.peek(key);
+        }
+    }
+
+    @Override
+    public void put(String key, String value) {
+        DataCache segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+    }
+
+    @Override
+    public void put(String key, String value, long duration, TimeUnit unit) {
+        DataCache segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, value, duration, unit);
+        }
+    }
+
+    /**
+     * Adds the entries, taking the lock of each segment once for all its
+     * entries.
+     */
+    @Override
+    public void putAll(Map<String, String> entries) {
+        List<Map<String, String>> batches = new ArrayList<>(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            batches.add(new LinkedHashMap<>());
+        }
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            batches.get(indexFor(entry.getKey())).put(entry.getKey(), entry.getValue());
+        }
+        for (int i = 0; i < segments.length; i++) {
+            if (!batches.get(i).isEmpty()) {
+                synchronized (segments[i]) {
+                    segments[i].putAll(batches.get(i));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        DataCache segment = segmentFor(key);
+        synchronized (segment) {
+            segment.remove(key);
+        }
+    }
+
+    /**
+     * Removes the keys, taking the lock of each segment once for all its keys.
+     */
+    @Override
+    public void removeAll(Collection<String> keys) {
+        List<List<String>> batches = batches(keys);
+        for (int i = 0; i < segments.length; i++) {
+            if (!batches.get(i).isEmpty()) {
+                synchronized (segments[i]) {
+                    segments[i].removeAll(batches.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Expires elements once they were not read or replaced for the given time.
+     */
+    public ConcurrentDataCache expireAfterAccess(long duration, TimeUnit unit) {
+        this.expireAfterAccess = unit.toNanos(duration);
+        segment();
+        return this;
+    }
+
+    /**
+     * Expires elements the given time after they were added or replaced,
+     * elements added with their own time to live use that instead.
+     */
+    public ConcurrentDataCache expireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWrite = unit.toNanos(duration);
+        segment();
+        return this;
+    }
+
+    /**
+     * Bounds the policy metadata kept for keys read while not cached, each
+     * segment gets an equal share of the limit.
+     *
+     * @see DataCache#maximumGhosts(long)
+     */
+    public ConcurrentDataCache maximumGhosts(long maximumGhosts) {
+        this.maximumGhosts = Math.max(0, maximumGhosts);
+        segment();
+        return this;
+    }
+
+    /**
+     * Bounds the cache by the total weight of its elements, estimated as
+     * {@link Weigher#UTF16} bytes. Each segment gets an equal share of the
+     * maximum weight.
+     */
+    public ConcurrentDataCache maximumWeight(long maximumWeight) {
+        return maximumWeight(maximumWeight, Weigher.UTF16);
+    }
+
+    /**
+     * Bounds the cache by the total weight of its elements, as calculated by
+     * the weigher. Each segment gets an equal share of the maximum weight.
+     */
+    public ConcurrentDataCache maximumWeight(long maximumWeight, Weigher weigher) {
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        segment();
+        return this;
+    }
+
+    /**
+     * Stores the values off the heap in direct memory slabs, each segment gets
+     * an equal share of the given bytes.
+     *
+     * @see DataCache#offHeap(long)
+     */
+    public ConcurrentDataCache offHeap(long maximumBytes) {
+        this.offHeapBytes = maximumBytes;
+        segment();
+        return this;
+    }
+
+    /**
+     * Records statistics of all segments, read by {@link #stats()}.
+     */
+    public ConcurrentDataCache recordStats() {
+        this.stats = new StatsCounter();
+        segment();
+        return this;
+    }
+
+    /**
+     * Replaces the cached elements with the elements saved by
+     * {@link #snapshot(Path)}, restoring the segments in parallel.
+     *
+     * @see DataCache#restore(Path)
+     */
+    public void restore(Path path) throws IOException {
+        List<List<Snapshot.Entry>> chunks = Snapshot.read(path);
+        clear();
+        chunks.parallelStream().forEach(chunk -> {
+            for (Snapshot.Entry entry : chunk) {
+                DataCache segment = segmentFor(entry.key);
+                synchronized (segment) {
+                    segment.restore(entry);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a second level below each segment holding an equal share of the
+     * given size and bytes, with values in slabs of a memory mapped file in
+     * the directory, one file for each segment. Elements move between the
+     * levels of a segment under the lock of the segment.
+     *
+     * @see DataCache#secondLevel(DataCache)
+     */
+    public ConcurrentDataCache secondLevel(long size, Path directory, long maximumBytes) {
+        this.secondLevelSize = size;
+        this.secondLevelDirectory = directory;
+        this.secondLevelBytes = maximumBytes;
+        segment();
+        return this;
+    }
+
+    /**
+     * Sets the number of segments, rounded down to a power of two and limited
+     * by the cache size so that every segment holds at least one element.
+     */
+    public ConcurrentDataCache segments(int concurrency) {
+        this.concurrency = concurrency;
+        segment();
+        return this;
+    }
+
+    public ConcurrentDataCache size(long size) {
+        this.size = size;
+        segment();
+        return this;
+    }
+
+    /**
+     * Saves the cached elements and their policy priorities to a binary file,
+     * one chunk for each segment so a cache with the same number of segments
+     * restores each segment from one chunk in its saved order. Each segment is
+     * locked only while its elements are collected.
+     *
+     * @see DataCache#snapshot(Path)
+     */
+    public void snapshot(Path path) throws IOException {
+        List<List<Snapshot.Entry>> chunks = new ArrayList<>(segments.length);
+        for (DataCache segment : segments) {
+            synchronized (segment) {
+                chunks.add(segment.entries());
+            }
+        }
+        Snapshot.write(path, chunks);
+    }
+
+    /**
+     * Returns a snapshot of the statistics, all zero unless recording.
+     */
+    public CacheStats stats() {
+        return stats == null ? new StatsCounter().snapshot() : stats.snapshot();
+    }
+
+    /**
+     * Sets the nanosecond time source used for expiry, defaults to
+     * {@link System#nanoTime()}.
+     */
+    public ConcurrentDataCache ticker(LongSupplier ticker) {
+        this.ticker = ticker;
+        segment();
+        return this;
+    }
+
+    /**
+     * Sets the eviction policy, each segment gets its own policy instance from
+     * the supplier.
+     */
+    public ConcurrentDataCache with(Supplier<Policy> evictionStrategy) {
+        this.policy = evictionStrategy;
+        segment();
+        return this;
+    }
+
+    /**
+     * Writes the changes of all segments to the writer in the background,
+     * through one shared queue.
+     *
+     * @see DataCache#writeBehind(WriteBehind)
+     */
+    public ConcurrentDataCache writeBehind(WriteBehind writeBehind) {
+        this.writeBehind = writeBehind;
+        this.writer = null;
+        segment();
+        return this;
+    }
+
+    /**
+     * Writes every put and remove to the writer, which must be thread safe,
+     * under the lock of the segment of the key so writes of a key reach the
+     * writer in order.
+     *
+     * @see DataCache#writeThrough(CacheWriter)
+     */
+    public ConcurrentDataCache writeThrough(CacheWriter writer) {
+        this.writer = writer;
+        this.writeBehind = null;
+        segment();
+        return this;
+    }
+
+    private void segment() {
+        int count = Integer.highestOneBit((int) Math.max(1, Math.min(concurrency, size)));
+        segments = new DataCache[count];
+        for (int i = 0; i < count; i++) {
+            // spread the remainder so segment sizes add up to the cache size
+            segments[i] = configure(new DataCache(size / count + (i < size % count ? 1 : 0)), i);
+        }
+    }
+
+    private DataCache configure(DataCache segment, int index) {
+        segment.with(policy.get()).ticker(ticker);
+        if (expireAfterWrite > 0) {
+            segment.expireAfterWrite(expireAfterWrite, TimeUnit.NANOSECONDS);
+        }
+        if (expireAfterAccess > 0) {
+            segment.expireAfterAccess(expireAfterAccess, TimeUnit.NANOSECONDS);
+        }
+        if (weigher != null) {
+            segment.maximumWeight(maximumWeight / segments.length, weigher);
+        }
+        if (offHeapBytes > 0) {
+            segment.offHeap(offHeapBytes / segments.length);
+        }
+        if (maximumGhosts >= 0) {
+            segment.maximumGhosts(maximumGhosts / segments.length);
+        }
+        if (stats != null) {
+            segment.recordStats(stats);
+        }
+        if (writer != null) {
+            segment.writeThrough(writer);
+        }
+        if (writeBehind != null) {
+            segment.writeBehind(writeBehind);
+        }
+        if (secondLevelSize > 0) {
+            int count = segments.length;
+            segment.secondLevel(new DataCache(secondLevelSize / count + (index < secondLevelSize % count ? 1 : 0))
+                    .with(policy.get())
+                    .ticker(ticker)
+                    .offHeap(secondLevelBytes / count, secondLevelDirectory.resolve("segment-" + index + ".slabs")));
+        }
+        return segment;
+    }
+
+    /**
+     * Splits the keys into a batch for each segment.
+     */
+    private List<List<String>> batches(Collection<String> keys) {
+        List<List<String>> batches = new ArrayList<>(segments.length);
+        for (int i = 0; i < segments.length; i++) {
+            batches.add(new ArrayList<>());
+        }
+        for (String key : keys) {
+            batches.get(indexFor(key)).add(key);
+        }
+        return batches;
+    }
+
+    private int indexFor(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return (hash ^ (hash >>> 16)) & (segments.length - 1);
+    }
+
+    private DataCache segmentFor(String key) {
+        return segments[indexFor(key)];
+    }
+
+}
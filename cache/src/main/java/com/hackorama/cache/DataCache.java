@@ -1,66 +1,854 @@
 package com.hackorama.cache;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 import com.hackorama.cache.policy.FrequencyPolicy;
 import com.hackorama.cache.policy.Policy;
+import com.hackorama.cache.stats.CacheStats;
+import com.hackorama.cache.stats.StatsCounter;
 
 public class DataCache implements Cache {
 
-    private Map<String, String> map = new HashMap<String, String>();
+    private static final long NEVER = Long.MAX_VALUE >> 1; // far enough, without overflow when added to now
+    private static final int SAMPLE_MASK = 15; // time one in sixteen policy updates
+
+    private Storage storage = new HeapStorage();
     private Policy policy = new FrequencyPolicy();
+    private String policyName = policy.getClass().getSimpleName();
     private long size = 10;
+    private Weigher weigher; // null unless bounded by weight
+    private long maximumWeight = Long.MAX_VALUE;
+    private long weight;
+    private LongSupplier ticker = System::nanoTime;
+    private TimerWheel expiry; // created on first use once any expiry is set
+    private boolean expiring;
+    private long expireAfterWrite;
+    private long expireAfterAccess;
+    private StatsCounter stats; // null unless recording
+    private int samples;
+    private CacheWriter writer; // null unless writing through or behind
+    private WriteBehind writeBehind; // null unless writing behind
+    private DataCache secondLevel; // null unless tiered
+    private final Set<String> ghosts = new LinkedHashSet<>(); // recently missed keys, least recently missed first
+    private long maximumGhosts = -1; // the cache size unless set
 
     public DataCache() {
-
+        policy.capacity(size);
     }
 
     public DataCache(long size) {
         this.size = size;
+        policy.capacity(size);
     }
 
     @Override
     public void clear() {
         policy.clear();
-        map.clear();
+        storage.clear();
+        ghosts.clear();
+        weight = 0;
+        if (expiry != null) {
+            expiry.clear();
+        }
+        if (secondLevel != null) {
+            secondLevel.clear();
+        }
+    }
+
+    /**
+     * Computes the new value with one lookup and one policy update, a new
+     * value is tracked as a write and starts a new time to live, returning the
+     * current value itself is tracked as a read.
+     */
+    @Override
+    public String compute(String key, BiFunction<String, String, String> remapping) {
+        long now = now(key);
+        String value = current(key);
+        return update(key, value, remapping.apply(key, value), now);
+    }
+
+    /**
+     * Returns the current value tracked as a read, or adds the computed value
+     * tracked as a write, with one lookup and one policy update, recording a
+     * hit or a miss.
+     */
+    @Override
+    public String computeIfAbsent(String key, Function<String, String> mapping) {
+        long now = now(key);
+        String value = current(key);
+        if (stats != null) {
+            if (value == null) {
+                stats.recordMisses(1);
+            } else {
+                stats.recordHits(1);
+            }
+        }
+        return update(key, value, value == null ? mapping.apply(key) : value, now);
+    }
+
+    /**
+     * Computes the new value with one lookup and one policy update, see
+     * {@link #compute(String, BiFunction)}, a missing key is not tracked.
+     */
+    @Override
+    public String computeIfPresent(String key, BiFunction<String, String, String> remapping) {
+        long now = now(key);
+        String value = current(key);
+        return value == null ? null : update(key, value, remapping.apply(key, value), now);
     }
 
     @Override
     public String get(String key) {
-        String value = map.get(key);
-        policy.trackReads(key, value);
+        long now = now(key);
+        if (expiring) {
+            touch(key, now);
+        }
+        String value = current(key);
+        trackReads(key, value);
+        if (value == null) {
+            missed(key);
+        }
+        if (stats != null) {
+            if (value == null) {
+                stats.recordMisses(1);
+            } else {
+                stats.recordHits(1);
+            }
+        }
         return value;
     }
 
+    /**
+     * Returns the values for the keys with one policy update for the whole
+     * batch, reads are tracked in the order of the keys.
+     */
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        long now = 0;
+        if (expiring) {
+            now = ticker.getAsLong();
+            advance(now);
+        }
+        Map<String, String> reads = new LinkedHashMap<>();
+        Map<String, String> values = new HashMap<>();
+        for (String key : keys) {
+            if (expiring) {
+                expire(key, now);
+                touch(key, now);
+            }
+            String value = current(key);
+            reads.put(key, value);
+            if (value != null) {
+                values.put(key, value);
+            }
+        }
+        trackReads(reads);
+        for (Map.Entry<String, String> read : reads.entrySet()) {
+            if (read.getValue() == null) {
+                missed(read.getKey());
+            }
+        }
+        if (stats != null) {
+            stats.recordHits(values.size());
+            stats.recordMisses(reads.size() - values.size());
+        }
+        return values;
+    }
+
+    /**
+     * Merges the value with one lookup and one policy update, see
+     * {@link #compute(String, BiFunction)}.
+     */
+    @Override
+    public String merge(String key, String value, BiFunction<String, String, String> remapping) {
+        Objects.requireNonNull(value);
+        long now = now(key);
+        String current = current(key);
+        return update(key, current, current == null ? value : remapping.apply(current, value), now);
+    }
+
+    /**
+     * Returns the cached value, or the value in the second level without
+     * moving it up, unless it expired.
+     */
+    @Override
+    public String peek(String key) {
+        if (expiry != null && expiry.expired(key, ticker.getAsLong())) {
+            return null;
+        }
+        String value = storage.get(key);
+        return value == null && secondLevel != null ? secondLevel.peek(key) : value;
+    }
+
     @Override
     public void put(String key, String value) {
-        policy.trackWrites(key, value);
-        if (map.size() >= size) {
-            // Find a valid key to remove based on eviction policy,
-            // also lazy remove any removed keys from policy tracking
-            String evict = policy.evict();
-            while (!map.containsKey(evict)) {
-                evict = policy.evict();
+        put(key, value, expireAfterWrite);
+    }
+
+    @Override
+    public void put(String key, String value, long duration, TimeUnit unit) {
+        expiring = true;
+        put(key, value, Math.max(1, unit.toNanos(duration)));
+    }
+
+    /**
+     * Adds the entries with one policy update for the whole batch, writes are
+     * tracked in the iteration order of the entries. The entries are stored
+     * first and the cache then evicts down to its bounds, so the policy picks
+     * evictions among old and new elements alike, and a batch larger than the
+     * cache keeps only what fits.
+     */
+    @Override
+    public void putAll(Map<String, String> entries) {
+        long now = 0;
+        if (expiring) {
+            now = ticker.getAsLong();
+            advance(now);
+        }
+        if (writer != null) {
+            writer.writeAll(entries);
+        }
+        Map<String, String> writes = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            String key = entry.getKey();
+            if (expiring) {
+                expire(key, now);
+            }
+            discard(key);
+            long added = weigher == null ? 0 : weigh(key, entry.getValue());
+            if (store(key, entry.getValue(), added, now, expireAfterWrite)) {
+                writes.put(key, entry.getValue());
             }
-            map.remove(evict);
         }
-        map.put(key, value);
+        trackWrites(writes);
+        evictOverBounds();
     }
 
     @Override
     public void remove(String key) {
-        map.remove(key);
+        if (writer != null) {
+            writer.delete(key);
+        }
+        discard(key);
+        policy.remove(key);
+        if (expiry != null) {
+            expiry.cancel(key);
+        }
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        if (writer != null) {
+            writer.deleteAll(keys);
+        }
+        for (String key : keys) {
+            discard(key);
+            policy.remove(key);
+            if (expiry != null) {
+                expiry.cancel(key);
+            }
+        }
+    }
+
+    /**
+     * Expires elements once they were not read or replaced for the given time.
+     */
+    public DataCache expireAfterAccess(long duration, TimeUnit unit) {
+        this.expireAfterAccess = unit.toNanos(duration);
+        this.expiring = true;
+        return this;
+    }
+
+    /**
+     * Expires elements the given time after they were added or replaced,
+     * elements added with their own time to live use that instead.
+     */
+    public DataCache expireAfterWrite(long duration, TimeUnit unit) {
+        this.expireAfterWrite = unit.toNanos(duration);
+        this.expiring = true;
+        return this;
+    }
+
+    /**
+     * Bounds the policy metadata kept for ghosts, keys read while not cached,
+     * to the most recent misses, defaults to the cache size. Policies like
+     * {@link FrequencyPolicy} count reads of missed keys so a key read often
+     * is valued once added, a limit of zero drops the metadata on each miss.
+     */
+    public DataCache maximumGhosts(long maximumGhosts) {
+        this.maximumGhosts = Math.max(0, maximumGhosts);
+        return this;
+    }
+
+    /**
+     * Bounds the cache by the total weight of its elements, estimated as
+     * {@link Weigher#UTF16} bytes. The cache evicts until both the element
+     * count fits its size and the total weight fits the maximum weight.
+     */
+    public DataCache maximumWeight(long maximumWeight) {
+        return maximumWeight(maximumWeight, Weigher.UTF16);
+    }
+
+    /**
+     * Bounds the cache by the total weight of its elements, as calculated by
+     * the weigher. The cache evicts until both the element count fits its size
+     * and the total weight fits the maximum weight.
+     */
+    public DataCache maximumWeight(long maximumWeight, Weigher weigher) {
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        return this;
+    }
+
+    /**
+     * Stores the values off the heap as UTF-8 in direct memory slabs of one
+     * megabyte, up to the given bytes, keeping only the keys and compact
+     * chunk addresses on the heap. When the slabs are full, elements are
+     * evicted in turn among the values of about the same size as the one put,
+     * or a new size takes over the pages of a slab holding the fewest values.
+     * Values larger than a slab are not cached. Replaces any cached
+     * elements, so set it before using the cache.
+     */
+    public DataCache offHeap(long maximumBytes) {
+        this.storage = new OffHeapStorage(maximumBytes);
+        clear();
+        return this;
+    }
+
+    /**
+     * Stores the values off the heap as UTF-8 in slabs of one megabyte mapped
+     * from the file, up to the given bytes, so values beyond physical memory
+     * are paged to disk by the operating system. The file is scratch space,
+     * truncated on first use and never read back.
+     *
+     * @see #offHeap(long)
+     */
+    public DataCache offHeap(long maximumBytes, Path file) {
+        this.storage = new OffHeapStorage(maximumBytes, file);
+        clear();
+        return this;
+    }
+
+    /**
+     * Records statistics, read by {@link #stats()}.
+     */
+    public DataCache recordStats() {
+        return recordStats(new StatsCounter());
+    }
+
+    /**
+     * Records statistics into the given counter, which can be shared with
+     * other caches.
+     */
+    public DataCache recordStats(StatsCounter counter) {
+        this.stats = counter;
+        return this;
+    }
+
+    /**
+     * Replaces the cached elements with the elements saved by
+     * {@link #snapshot(Path)}, along with their policy priorities so the cache
+     * comes back warm with its eviction order. The file is decoded in parallel
+     * chunks. Restored elements start a new time to live, and if the file
+     * holds more than the cache bounds allow the least valuable elements are
+     * evicted as usual.
+     */
+    public void restore(Path path) throws IOException {
+        List<List<Snapshot.Entry>> chunks = Snapshot.read(path);
+        clear();
+        for (List<Snapshot.Entry> chunk : chunks) {
+            for (Snapshot.Entry entry : chunk) {
+                restore(entry);
+            }
+        }
+    }
+
+    /**
+     * Adds a larger second level cache, typically {@link #offHeap(long, Path)},
+     * below this one. Elements evicted from this cache move down to the second
+     * level, keeping their time to live, and a miss found in the second level
+     * moves back up, so each element is in one level at a time. The second
+     * level evicts by its own size and policy, its elements are not included
+     * in snapshots.
+     */
+    public DataCache secondLevel(DataCache secondLevel) {
+        this.secondLevel = secondLevel;
+        return this;
     }
 
     public DataCache size(long size) {
         this.size = size;
+        policy.capacity(size);
+        return this;
+    }
+
+    /**
+     * Saves the cached elements and their policy priorities to a binary file,
+     * written through a memory mapped buffer, for {@link #restore(Path)}.
+     */
+    public void snapshot(Path path) throws IOException {
+        Snapshot.write(path, Snapshot.split(entries()));
+    }
+
+    /**
+     * Returns a snapshot of the statistics, all zero unless recording.
+     */
+    public CacheStats stats() {
+        return stats == null ? new StatsCounter().snapshot() : stats.snapshot();
+    }
+
+    /**
+     * Sets the nanosecond time source used for expiry, defaults to
+     * {@link System#nanoTime()}.
+     */
+    public DataCache ticker(LongSupplier ticker) {
+        this.ticker = ticker;
         return this;
     }
 
+    /**
+     * Returns the total weight of the cached elements, zero unless bounded by
+     * {@link #maximumWeight(long, Weigher)}.
+     */
+    public long weight() {
+        return weight;
+    }
+
     public DataCache with(Policy evictionStrategy) {
         this.policy = evictionStrategy;
+        this.policyName = policy.getClass().getSimpleName();
+        policy.capacity(size);
         return this;
     }
 
+    /**
+     * Writes the changes to the writer in the background, see
+     * {@link WriteBehind}. A pending change of an element evicted or expired
+     * from the cache is written right away.
+     */
+    public DataCache writeBehind(WriteBehind writeBehind) {
+        this.writer = writeBehind;
+        this.writeBehind = writeBehind;
+        return this;
+    }
+
+    /**
+     * Writes every put and remove to the writer before the cache is updated,
+     * so the cache is left unchanged if the writer fails. Values a
+     * {@link LoadingCache} loads are put, and written, too.
+     */
+    public DataCache writeThrough(CacheWriter writer) {
+        this.writer = writer;
+        this.writeBehind = null;
+        return this;
+    }
+
+    /**
+     * Returns the cached elements in the order to restore them, elements the
+     * policy does not track first, then the tracked elements from the least to
+     * the most prioritized.
+     */
+    List<Snapshot.Entry> entries() {
+        if (expiring) {
+            advance(ticker.getAsLong());
+        }
+        Set<String> tracked = new HashSet<>();
+        List<Snapshot.Entry> prioritized = new ArrayList<>();
+        policy.priorities((key, priority) -> {
+            if (storage.contains(key) && tracked.add(key)) { // skip keys removed but not yet dropped by the policy
+                prioritized.add(new Snapshot.Entry(key, storage.get(key), true, priority));
+            }
+        });
+        List<Snapshot.Entry> entries = new ArrayList<>(storage.size());
+        for (String key : storage.keys()) {
+            if (!tracked.contains(key)) {
+                entries.add(new Snapshot.Entry(key, storage.get(key), false, 0));
+            }
+        }
+        entries.addAll(prioritized);
+        return entries;
+    }
+
+    /**
+     * Adds an element evicted from the level above, keeping its time to live.
+     */
+    void demote(String key, String value, long timeToLive) {
+        if (timeToLive > 0) {
+            expiring = true;
+        }
+        insert(key, value, timeToLive > 0 ? timeToLive : expireAfterWrite);
+    }
+
+    /**
+     * Adds a saved element back, with its policy priority if it was tracked.
+     */
+    void restore(Snapshot.Entry entry) {
+        long now = expiring ? ticker.getAsLong() : 0;
+        discard(entry.key);
+        long added = weigher == null ? 0 : weigh(entry.key, entry.value);
+        if (store(entry.key, entry.value, added, now, expireAfterWrite) && entry.tracked) {
+            policy.restore(entry.key, entry.priority);
+        }
+        evictOverBounds();
+    }
+
+    /**
+     * Returns the time left before the key expires by its write deadline, or
+     * zero if it has none.
+     */
+    long timeToLive(String key) {
+        if (expiry == null) {
+            return 0;
+        }
+        long deadline = expiry.deadline(key);
+        if (deadline == Long.MAX_VALUE) {
+            return 0;
+        }
+        long left = deadline - ticker.getAsLong();
+        return left > NEVER / 2 ? 0 : Math.max(1, left); // a far off deadline only bounds access expiry
+    }
+
+    /**
+     * Removes the key from the cached elements and their total weight, and
+     * from the second level.
+     */
+    private void discard(String key) {
+        if (weigher != null && storage.contains(key)) {
+            weight -= weigher.weigh(key, storage.get(key));
+        }
+        storage.remove(key);
+        if (secondLevel != null) {
+            secondLevel.remove(key);
+        }
+    }
+
+    /**
+     * Evicts a cached element chosen by the policy.
+     */
+    private void evict() {
+        // Find a valid key to remove based on eviction policy, skipping
+        // any keys the policy tracks that are not cached
+        String evict = policy.evict();
+        while (evict != null && !storage.contains(evict)) {
+            evict = policy.evict();
+        }
+        if (evict == null) {
+            // Policy has not tracked any cached key yet, like a frequency
+            // policy before any reads, so evict any key
+            evict = storage.any();
+        }
+        evict(evict);
+    }
+
+    /**
+     * Evicts the cached element of a key the policy no longer tracks.
+     */
+    private void evict(String evict) {
+        String value = secondLevel == null ? null : storage.get(evict);
+        long timeToLive = value == null ? 0 : timeToLive(evict);
+        discard(evict);
+        if (expiry != null) {
+            expiry.cancel(evict);
+        }
+        if (value != null) {
+            secondLevel.demote(evict, value, timeToLive);
+        }
+        if (writeBehind != null) {
+            writeBehind.evicted(evict);
+        }
+        if (stats != null) {
+            stats.recordEviction(policyName);
+        }
+    }
+
+    private void evictOverBounds() {
+        while (!storage.isEmpty() && (storage.size() > size || weight > maximumWeight)) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the expired elements due so far.
+     */
+    private void advance(long now) {
+        if (expiry == null) {
+            expiry = new TimerWheel(now);
+        }
+        expiry.advance(now, this::expired);
+    }
+
+    /**
+     * Removes the key if it is expired.
+     */
+    private void expire(String key, long now) {
+        if (expiry.expired(key, now)) {
+            expiry.cancel(key);
+            expired(key);
+        }
+    }
+
+    private void expired(String key) {
+        discard(key);
+        policy.remove(key);
+        if (writeBehind != null) {
+            writeBehind.evicted(key);
+        }
+        if (stats != null) {
+            stats.recordExpiration();
+        }
+    }
+
+    private void put(String key, String value, long timeToLive) {
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        insert(key, value, timeToLive);
+    }
+
+    /**
+     * Adds the element, evicting as needed to make room for it.
+     */
+    private void insert(String key, String value, long timeToLive) {
+        replace(key, value, now(key), timeToLive);
+    }
+
+    /**
+     * Returns the current time if expiring, after removing the expired
+     * elements and the key if it is expired, or zero.
+     */
+    private long now(String key) {
+        if (!expiring) {
+            return 0;
+        }
+        long now = ticker.getAsLong();
+        advance(now);
+        expire(key, now);
+        return now;
+    }
+
+    /**
+     * Returns the cached value of the key, moving it up from the second level
+     * if needed, without tracking the read.
+     */
+    private String current(String key) {
+        String value = storage.get(key);
+        if (value == null && secondLevel != null) {
+            value = promote(key);
+        }
+        return value;
+    }
+
+    /**
+     * Adds or replaces the element as of the given time, evicting as needed to
+     * make room for it.
+     */
+    private void replace(String key, String value, long now, long timeToLive) {
+        trackWrites(key, value);
+        discard(key); // replacing a value does not need room for another element
+        long added = weigher == null ? 0 : weigh(key, value);
+        if (added > maximumWeight || !storage.fits(value)) { // never fits, evict nothing for it
+            reject(key);
+            return;
+        }
+        while (!storage.isEmpty() && (storage.size() >= size || weight + added > maximumWeight)) {
+            evict();
+        }
+        store(key, value, added, now, timeToLive);
+    }
+
+    /**
+     * Forgets the key of an element the cache cannot hold.
+     */
+    private void reject(String key) {
+        if (expiry != null) {
+            expiry.cancel(key);
+        }
+        policy.remove(key);
+    }
+
+    /**
+     * Remembers a missed key the policy may track, once however often it is
+     * missed, and drops the policy metadata of the least recently missed key
+     * beyond the limit unless it is cached by now.
+     */
+    private void missed(String key) {
+        long limit = maximumGhosts < 0 ? size : maximumGhosts;
+        if (limit == 0 || key == null) {
+            policy.remove(key);
+            return;
+        }
+        ghosts.remove(key); // moves a missed again key to the end
+        ghosts.add(key);
+        if (ghosts.size() > limit) {
+            Iterator<String> iterator = ghosts.iterator();
+            String oldest = iterator.next();
+            iterator.remove();
+            if (!storage.contains(oldest)) {
+                policy.remove(oldest);
+            }
+        }
+    }
+
+    /**
+     * Applies the result of a compute to the key and returns it, the current
+     * value itself is tracked as a read, null removes the key, and any other
+     * value is written.
+     */
+    private String update(String key, String current, String value, long now) {
+        if (value == current) {
+            if (value != null) {
+                if (expiring) {
+                    touch(key, now);
+                }
+                trackReads(key, value);
+            }
+            return value;
+        }
+        if (value == null) {
+            remove(key);
+            return null;
+        }
+        if (writer != null) {
+            writer.write(key, value);
+        }
+        replace(key, value, now, expireAfterWrite);
+        return value;
+    }
+
+    /**
+     * Moves the element of the key up from the second level, keeping its time
+     * to live, and returns its value, or null if it is not there either.
+     */
+    private String promote(String key) {
+        String value = secondLevel.get(key);
+        if (value == null) {
+            return null;
+        }
+        long timeToLive = secondLevel.timeToLive(key);
+        secondLevel.remove(key);
+        if (timeToLive > 0) {
+            expiring = true;
+        }
+        insert(key, value, timeToLive > 0 ? timeToLive : expireAfterWrite);
+        return value;
+    }
+
+    /**
+     * Stores the element, evicting only if the off heap slabs are full, and
+     * returns false if it does not fit even in an empty cache.
+     */
+    private boolean store(String key, String value, long added, long now, long timeToLive) {
+        if (added > maximumWeight || !storage.fits(value)) { // heavier than the whole cache or a slab
+            reject(key);
+            return false;
+        }
+        boolean stored = storage.put(key, value);
+        while (!stored && !storage.isEmpty()) { // off heap slabs are full
+            Collection<String> crowding = storage.crowding(value);
+            if (crowding.isEmpty()) {
+                evict();
+            }
+            for (String crowded : crowding) { // the slabs need these back, whatever the policy says
+                policy.remove(crowded);
+                evict(crowded);
+            }
+            stored = storage.put(key, value);
+        }
+        if (!stored) {
+            reject(key);
+            return false;
+        }
+        weight += added;
+        if (expiring) {
+            schedule(key, now, timeToLive);
+        }
+        if (stats != null) {
+            stats.recordPut();
+        }
+        return true;
+    }
+
+    /**
+     * Extends the time to live of the key on access.
+     */
+    private void touch(String key, long now) {
+        if (expireAfterAccess > 0 && storage.contains(key)) {
+            expiry.touch(key, now + expireAfterAccess);
+        }
+    }
+
+    private void trackReads(String key, String value) {
+        if (stats != null && (++samples & SAMPLE_MASK) == 0) {
+            long start = System.nanoTime();
+            policy.trackReads(key, value);
+            stats.recordPolicyUpdate(System.nanoTime() - start);
+        } else {
+            policy.trackReads(key, value);
+        }
+    }
+
+    private void trackReads(Map<String, String> reads) {
+        if (stats != null && (++samples & SAMPLE_MASK) == 0) {
+            long start = System.nanoTime();
+            policy.trackReads(reads);
+            stats.recordPolicyUpdates(reads.size(), System.nanoTime() - start);
+        } else {
+            policy.trackReads(reads);
+        }
+    }
+
+    private void trackWrites(String key, String value) {
+        if (stats != null && (++samples & SAMPLE_MASK) == 0) {
+            long start = System.nanoTime();
+            policy.trackWrites(key, value);
+            stats.recordPolicyUpdate(System.nanoTime() - start);
+        } else {
+            policy.trackWrites(key, value);
+        }
+    }
+
+    private void trackWrites(Map<String, String> writes) {
+        if (stats != null && (++samples & SAMPLE_MASK) == 0) {
+            long start = System.nanoTime();
+            policy.trackWrites(writes);
+            stats.recordPolicyUpdates(writes.size(), System.nanoTime() - start);
+        } else {
+            policy.trackWrites(writes);
+        }
+    }
+
+    private long weigh(String key, String value) {
+        long weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight " + weight + " for key " + key);
+        }
+        return weight;
+    }
+
+    private void schedule(String key, long now, long timeToLive) {
+        if (timeToLive <= 0 && expireAfterAccess <= 0) {
+            expiry.cancel(key);
+            return;
+        }
+        long deadline = now + (timeToLive > 0 ? Math.min(timeToLive, NEVER) : NEVER);
+        long time = expireAfterAccess > 0 ? Math.min(deadline - now, expireAfterAccess) + now : deadline;
+        expiry.schedule(key, time, deadline);
+    }
+
 }
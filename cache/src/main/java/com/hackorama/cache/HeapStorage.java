@@ -0,0 +1,71 @@
+package com.hackorama.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stores the values as strings on the heap.
+ */
+class HeapStorage implements Storage {
+
+    private final Map<String, String> map = new LinkedHashMap<String, String>(); // any() is the oldest key in O(1)
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public Collection<String> crowding(String value) {
+        return Collections.emptyList(); // never full
+    }
+
+    @Override
+    public String get(String key) {
+        return map.get(key);
+    }
+
+    @Override
+    public String any() {
+        return map.keySet().iterator().next();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public Collection<String> keys() {
+        return map.keySet();
+    }
+
+    @Override
+    public boolean fits(String value) {
+        return true;
+    }
+
+    @Override
+    public boolean put(String key, String value) {
+        map.put(key, value);
+        return true;
+    }
+
+    @Override
+    public void remove(String key) {
+        map.remove(key);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+}
@@ -0,0 +1,412 @@
+package com.hackorama.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.hackorama.cache.stats.StatsCounter;
+
+/**
+ * A cache that loads missing values with a loader function. Concurrent misses
+ * for the same key wait on a single in flight load instead of each calling the
+ * loader, and with {@link #refreshAfterWrite(long, TimeUnit)} values are
+ * reloaded in the background before they go stale, so hot keys never miss.
+ *
+ * Thread safe as long as the underlying cache is, like a
+ * {@link ConcurrentDataCache}.
+ *
+ * <pre>
+ * Cache users = new LoadingCache(new ConcurrentDataCache().size(1024).expireAfterWrite(10, TimeUnit.MINUTES),
+ *         key -&gt; database.find(key)).refreshAfterWrite(8, TimeUnit.MINUTES);
+ * </pre>
+ */
+public class LoadingCache implements Cache {
+
+    private static final int SWEEP_INTERVAL = 1024; // loads between dropping stale refresh times
+
+    private final Cache cache;
+    private final Function<String, String> loader;
+    private Function<Set<String>, Map<String, String>> bulkLoader; // null to load one key at a time
+    private final ConcurrentMap<String, CompletableFuture<String>> loads = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> loadTimes = new ConcurrentHashMap<>();
+    private Executor executor = ForkJoinPool.commonPool();
+    private LongSupplier ticker = System::nanoTime;
+    private StatsCounter stats; // null unless recording
+    private long refreshAfterWrite; // zero for no refresh
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    /**
+     * @param cache  the cache holding the loaded values
+     * @param loader returns the value for a key, or null if there is none
+     */
+    public LoadingCache(Cache cache, Function<String, String> loader) {
+        this.cache = cache;
+        this.loader = loader;
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+        loadTimes.clear();
+    }
+
+    /**
+     * Computes the new value in the underlying cache, atomically if it is,
+     * without calling the loader.
+     */
+    @Override
+    public String compute(String key, BiFunction<String, String, String> remapping) {
+        return changed(key, cache.compute(key, remapping));
+    }
+
+    /**
+     * Computes a missing value in the underlying cache, atomically if it is,
+     * with the given function instead of the loader.
+     */
+    @Override
+    public String computeIfAbsent(String key, Function<String, String> mapping) {
+        return cache.computeIfAbsent(key, k -> {
+            String value = mapping.apply(k);
+            if (value != null) {
+                loaded(k);
+            }
+            return value;
+        });
+    }
+
+    /**
+     * Computes a present value in the underlying cache, atomically if it is.
+     */
+    @Override
+    public String computeIfPresent(String key, BiFunction<String, String, String> remapping) {
+        return changed(key, cache.computeIfPresent(key, remapping));
+    }
+
+    /**
+     * Returns the cached value for the key, or loads it, waiting for a load of
+     * the same key already in flight instead of loading again.
+     *
+     * @throws RuntimeException thrown by the loader
+     */
+    @Override
+    public String get(String key) {
+        String value = cache.get(key);
+        if (value != null) {
+            refreshIfStale(key);
+            return value;
+        }
+        CompletableFuture<String> load = new CompletableFuture<>();
+        CompletableFuture<String> inFlight = loads.putIfAbsent(key, load);
+        if (inFlight != null) {
+            return join(inFlight);
+        }
+        try {
+            value = cache.peek(key); // loaded by another thread since the miss
+            if (value == null) {
+                value = load(key);
+            }
+            load.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(key, load);
+        }
+    }
+
+    /**
+     * Returns the values for the keys, loading all the missing keys with one
+     * call to the bulk loader, or one key at a time without a bulk loader.
+     * Keys already loading by other threads are waited for instead of loaded
+     * again, keys without a value are left out.
+     *
+     * @throws RuntimeException thrown by the loader
+     */
+    @Override
+    public Map<String, String> getAll(Collection<String> keys) {
+        Map<String, String> values = cache.getAll(keys);
+        for (String key : values.keySet()) {
+            refreshIfStale(key);
+        }
+        Map<String, CompletableFuture<String>> claimed = new LinkedHashMap<>();
+        Map<String, CompletableFuture<String>> inFlight = new HashMap<>();
+        for (String key : keys) {
+            if (!values.containsKey(key) && !claimed.containsKey(key) && !inFlight.containsKey(key)) {
+                CompletableFuture<String> load = new CompletableFuture<>();
+                CompletableFuture<String> existing = loads.putIfAbsent(key, load);
+                if (existing == null) {
+                    claimed.put(key, load);
+                } else {
+                    inFlight.put(key, existing);
+                }
+            }
+        }
+        if (!claimed.isEmpty()) {
+            try {
+                Map<String, String> loaded = cache.getAll(claimed.keySet()); // loaded by others since the miss
+                Set<String> missing = new LinkedHashSet<>(claimed.keySet());
+                missing.removeAll(loaded.keySet());
+                if (!missing.isEmpty()) {
+                    loaded.putAll(loadAll(missing));
+                }
+                for (Map.Entry<String, CompletableFuture<String>> load : claimed.entrySet()) {
+                    String value = loaded.get(load.getKey());
+                    if (value != null) {
+                        values.put(load.getKey(), value);
+                    }
+                    load.getValue().complete(value);
+                }
+            } catch (RuntimeException e) {
+                for (CompletableFuture<String> load : claimed.values()) {
+                    load.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<String, CompletableFuture<String>> load : claimed.entrySet()) {
+                    loads.remove(load.getKey(), load.getValue());
+                }
+            }
+        }
+        for (Map.Entry<String, CompletableFuture<String>> load : inFlight.entrySet()) {
+            String value = join(load.getValue());
+            if (value != null) {
+                values.put(load.getKey(), value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Merges the value in the underlying cache, atomically if it is.
+     */
+    @Override
+    public String merge(String key, String value, BiFunction<String, String, String> remapping) {
+        return changed(key, cache.merge(key, value, remapping));
+    }
+
+    /**
+     * Returns the cached value without loading it.
+     */
+    @Override
+    public String peek(String key) {
+        return cache.peek(key);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        cache.put(key, value);
+        loaded(key);
+    }
+
+    @Override
+    public void put(String key, String value, long duration, TimeUnit unit) {
+        cache.put(key, value, duration, unit);
+        loaded(key);
+    }
+
+    @Override
+    public void putAll(Map<String, String> entries) {
+        cache.putAll(entries);
+        for (String key : entries.keySet()) {
+            loaded(key);
+        }
+    }
+
+    @Override
+    public void remove(String key) {
+        cache.remove(key);
+        loadTimes.remove(key);
+    }
+
+    @Override
+    public void removeAll(Collection<String> keys) {
+        cache.removeAll(keys);
+        loadTimes.keySet().removeAll(keys);
+    }
+
+    /**
+     * Sets a loader for many keys at once used by {@link #getAll(Collection)},
+     * returning the values it found by key. Any extra values returned are
+     * cached too.
+     */
+    public LoadingCache bulkLoader(Function<Set<String>, Map<String, String>> bulkLoader) {
+        this.bulkLoader = bulkLoader;
+        return this;
+    }
+
+    /**
+     * Sets the executor for background refreshes, defaults to the common
+     * fork join pool.
+     */
+    public LoadingCache executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Records load counts and times into the counter, share the counter of
+     * the underlying cache to see all statistics together.
+     */
+    public LoadingCache recordStats(StatsCounter counter) {
+        this.stats = counter;
+        return this;
+    }
+
+    /**
+     * Reloads a value in the background when it is read the given time after
+     * it was loaded, while still returning the current value. Set it below the
+     * expiry of the underlying cache so hot values are refreshed before they
+     * expire.
+     */
+    public LoadingCache refreshAfterWrite(long duration, TimeUnit unit) {
+        this.refreshAfterWrite = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Sets the nanosecond time source used for refresh, defaults to
+     * {@link System#nanoTime()}.
+     */
+    public LoadingCache ticker(LongSupplier ticker) {
+        this.ticker = ticker;
+        return this;
+    }
+
+    private static String join(CompletableFuture<String> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Calls the loader and caches a non null value.
+     */
+    private String load(String key) {
+        long start = ticker.getAsLong();
+        String value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException e) {
+            if (stats != null) {
+                stats.recordLoadFailure(ticker.getAsLong() - start);
+            }
+            throw e;
+        }
+        if (stats != null) {
+            stats.recordLoadSuccess(ticker.getAsLong() - start);
+        }
+        if (value != null) {
+            cache.put(key, value);
+            loaded(key);
+        }
+        return value;
+    }
+
+    /**
+     * Calls the bulk loader, or the loader for each key, and caches the non
+     * null values.
+     */
+    private Map<String, String> loadAll(Set<String> keys) {
+        Map<String, String> values = new HashMap<>();
+        if (bulkLoader == null) {
+            for (String key : keys) {
+                values.put(key, load(key));
+            }
+            return values;
+        }
+        long start = ticker.getAsLong();
+        Map<String, String> loaded;
+        try {
+            loaded = bulkLoader.apply(Collections.unmodifiableSet(keys));
+        } catch (RuntimeException e) {
+            if (stats != null) {
+                stats.recordLoadFailure(ticker.getAsLong() - start);
+            }
+            throw e;
+        }
+        if (stats != null) {
+            stats.recordLoadSuccess(ticker.getAsLong() - start);
+        }
+        for (Map.Entry<String, String> entry : loaded.entrySet()) {
+            if (entry.getValue() != null) {
+                values.put(entry.getKey(), entry.getValue());
+            }
+        }
+        putAll(values);
+        return values;
+    }
+
+    /**
+     * Restarts the refresh time of a computed value, or drops it if the key
+     * was removed, and returns the value.
+     */
+    private String changed(String key, String value) {
+        if (value == null) {
+            loadTimes.remove(key);
+        } else {
+            loaded(key);
+        }
+        return value;
+    }
+
+    private void loaded(String key) {
+        if (refreshAfterWrite > 0) {
+            long now = ticker.getAsLong();
+            loadTimes.put(key, now);
+            if (loadCount.incrementAndGet() % SWEEP_INTERVAL == 0) {
+                // keys not read for two refresh periods are cold, or evicted,
+                // drop their times so refresh tracking stays bounded
+                loadTimes.values().removeIf(time -> now - time > 2 * refreshAfterWrite);
+            }
+        }
+    }
+
+    private void refreshIfStale(String key) {
+        if (refreshAfterWrite <= 0) {
+            return;
+        }
+        Long loadTime = loadTimes.get(key);
+        if (loadTime == null) { // put before refresh was set, or dropped as cold
+            loaded(key);
+            return;
+        }
+        if (ticker.getAsLong() - loadTime < refreshAfterWrite) {
+            return;
+        }
+        CompletableFuture<String> refresh = new CompletableFuture<>();
+        if (loads.putIfAbsent(key, refresh) != null) {
+            return; // already loading
+        }
+        executor.execute(() -> {
+            try {
+                refresh.complete(load(key));
+            } catch (RuntimeException e) {
+                refresh.completeExceptionally(e); // keep the current value
+            } finally {
+                loads.remove(key, refresh);
+            }
+        });
+    }
+
+}
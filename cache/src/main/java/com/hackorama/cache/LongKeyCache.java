@@ -0,0 +1,282 @@
+package com.hackorama.cache;
+
+import java.util.Arrays;
+
+/**
+ * A cache for numeric keys, keyed by primitive {@code long} so keys need not be
+ * turned into strings. Elements are kept in an open addressing table of
+ * primitive arrays, linear probing with backward shift removal so there are no
+ * tombstones, and the eviction priorities in a binary heap of table slots.
+ * Reads and writes of cached keys allocate nothing.
+ *
+ * <pre>
+ * LongKeyCache users = new LongKeyCache().size(1024).with(LongKeyCache.Eviction.RECENT_ACCESS);
+ * users.put(42L, "value");
+ * </pre>
+ */
+public class LongKeyCache {
+
+    /**
+     * The priority evicted by, like the policies of {@link DataCache}. Equal
+     * priorities are evicted in the order they were set, or in reverse when
+     * evicting the most.
+     */
+    public enum Eviction {
+        /** The number of reads, an element starts at zero */
+        FREQUENCY,
+        /** The time of the last read, or of the add if not read yet */
+        RECENT_ACCESS,
+        /** The time of the last write */
+        RECENT_ADD,
+        /** The length of the value */
+        SIZE
+    }
+
+    private static final int MAXIMUM_SIZE = 1 << 29; // table of twice the size stays within an int
+
+    private Eviction eviction = Eviction.FREQUENCY;
+    private boolean order = true; // true evicts the least, false the most
+    private int size;
+    private int mask;
+    private int shift;
+    private long[] keys;
+    private String[] values; // null for an empty slot
+    private long[] priorities;
+    private long[] ticks; // when the priority was set, orders equal priorities
+    private int[] heapIndex; // slot to heap position
+    private int[] heap; // heap position to slot
+    private int count;
+    private long clock;
+
+    public LongKeyCache() {
+        this(10);
+    }
+
+    public LongKeyCache(long size) {
+        size(size);
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        count = 0;
+        clock = 0;
+    }
+
+    /**
+     * Returns the value for the key, or null if this cache do not contain a
+     * value for the key.
+     */
+    public String get(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        if (eviction == Eviction.FREQUENCY) {
+            prioritize(slot, priorities[slot] + 1);
+        } else if (eviction == Eviction.RECENT_ACCESS) {
+            prioritize(slot, clock);
+        }
+        return values[slot];
+    }
+
+    /**
+     * Evicts the most prioritized elements instead of the least.
+     */
+    public LongKeyCache most() {
+        return order(false);
+    }
+
+    /**
+     * Evicts the least prioritized elements, the default.
+     */
+    public LongKeyCache least() {
+        return order(true);
+    }
+
+    /**
+     * Adds the key and value, any old value for the key is replaced, a null
+     * value removes the key.
+     */
+    public void put(long key, String value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        int slot = find(key);
+        if (slot >= 0) {
+            values[slot] = value;
+            if (eviction == Eviction.RECENT_ADD) {
+                prioritize(slot, clock);
+            } else if (eviction == Eviction.SIZE) {
+                prioritize(slot, value.length());
+            }
+            return;
+        }
+        if (count == size) {
+            delete(heap[0]);
+        }
+        slot = index(key);
+        while (values[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        priorities[slot] = eviction == Eviction.FREQUENCY ? 0 : eviction == Eviction.SIZE ? value.length() : clock;
+        ticks[slot] = clock++;
+        heap[count] = slot;
+        heapIndex[slot] = count;
+        siftUp(count++);
+    }
+
+    public void remove(long key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            delete(slot);
+        }
+    }
+
+    /**
+     * Sets the number of elements, replaces any cached elements so set it
+     * before using the cache.
+     */
+    public LongKeyCache size(long size) {
+        if (size < 1 || size > MAXIMUM_SIZE) {
+            throw new IllegalArgumentException("Size " + size + " not between 1 and " + MAXIMUM_SIZE);
+        }
+        this.size = (int) size;
+        int capacity = Integer.highestOneBit(this.size * 2 - 1) << 1; // at most half full
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        keys = new long[capacity];
+        values = new String[capacity];
+        priorities = new long[capacity];
+        ticks = new long[capacity];
+        heapIndex = new int[capacity];
+        heap = new int[this.size];
+        count = 0;
+        clock = 0;
+        return this;
+    }
+
+    /**
+     * Sets the priority to evict by, replaces any cached elements so set it
+     * before using the cache.
+     */
+    public LongKeyCache with(Eviction eviction) {
+        this.eviction = eviction;
+        clear();
+        return this;
+    }
+
+    /**
+     * Returns true if slot a should be evicted before slot b.
+     */
+    private boolean before(int a, int b) {
+        if (priorities[a] != priorities[b]) {
+            return (priorities[a] < priorities[b]) == order;
+        }
+        return (ticks[a] < ticks[b]) == order;
+    }
+
+    /**
+     * Removes the element in the slot, shifting back the elements probed past
+     * it so lookups need no tombstones.
+     */
+    private void delete(int slot) {
+        int position = heapIndex[slot];
+        int last = heap[--count];
+        if (position != count) {
+            heap[position] = last;
+            heapIndex[last] = position;
+            siftDown(position);
+            siftUp(heapIndex[last]);
+        }
+        values[slot] = null;
+        int empty = slot;
+        for (int next = (slot + 1) & mask; values[next] != null; next = (next + 1) & mask) {
+            int home = index(keys[next]);
+            // keep the element if its home is cyclically within (empty, next]
+            boolean reachable = empty <= next ? empty < home && home <= next : empty < home || home <= next;
+            if (!reachable) {
+                move(next, empty);
+                empty = next;
+            }
+        }
+    }
+
+    private int find(long key) {
+        for (int slot = index(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int index(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift); // fibonacci hashing spreads sequential ids
+    }
+
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        values[to] = values[from];
+        priorities[to] = priorities[from];
+        ticks[to] = ticks[from];
+        heapIndex[to] = heapIndex[from];
+        heap[heapIndex[to]] = to;
+        values[from] = null;
+    }
+
+    private LongKeyCache order(boolean order) {
+        if (this.order != order) {
+            this.order = order;
+            for (int position = count / 2 - 1; position >= 0; position--) {
+                siftDown(position);
+            }
+        }
+        return this;
+    }
+
+    private void prioritize(int slot, long priority) {
+        priorities[slot] = priority;
+        ticks[slot] = clock++;
+        int position = heapIndex[slot];
+        siftDown(position);
+        siftUp(heapIndex[slot]);
+    }
+
+    private void siftDown(int position) {
+        int slot = heap[position];
+        int half = count >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < count && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], slot)) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapIndex[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = slot;
+        heapIndex[slot] = position;
+    }
+
+    private void siftUp(int position) {
+        int slot = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!before(slot, heap[parent])) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapIndex[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = slot;
+        heapIndex[slot] = position;
+    }
+
+}
@@ -0,0 +1,314 @@
+package com.hackorama.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Stores the values as UTF-8 bytes in off heap slabs, only the keys and the
+ * chunk addresses are kept on the heap, in an open addressing table of two
+ * arrays. A chunk holds the table slot of its key, the value byte length, or
+ * -1 for null, followed by the value bytes, so the key of a chunk the slabs
+ * need back is found without a search. Slabs are direct memory, or regions of
+ * a memory mapped file used as scratch space, so the operating system pages
+ * values out to disk under memory pressure.
+ */
+class OffHeapStorage implements Storage {
+
+    static final int SLAB_SIZE = 1 << 20;
+
+    private static final int CHUNK_HEADER = 2 * Integer.BYTES; // slot and length
+    private static final Object NULL_KEY = new Object(); // stands in for the null key
+
+    private final SlabAllocator allocator;
+    private Object[] keys = new Object[16]; // at most half full, null for an empty slot
+    private long[] addresses = new long[16];
+    private int mask = 15;
+    private int shift = 28; // 32 less the bits of a slot
+    private int count;
+    private int cursor; // where any() looks for a key next
+
+    OffHeapStorage(long maximumBytes) {
+        this(new SlabAllocator(maximumBytes, SLAB_SIZE));
+    }
+
+    OffHeapStorage(long maximumBytes, Path file) {
+        this(new SlabAllocator(maximumBytes, SLAB_SIZE, index -> map(file, index)));
+    }
+
+    OffHeapStorage(SlabAllocator allocator) {
+        this.allocator = allocator;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        count = 0;
+        allocator.clear();
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return find(mask(key)) >= 0;
+    }
+
+    /**
+     * Returns the keys of the chunks to free for the value, within its size
+     * class, or all on the pages a new size class takes over.
+     */
+    @Override
+    public Collection<String> crowding(String value) {
+        List<String> crowding = new ArrayList<>();
+        allocator.crowding(size(encode(value)),
+                address -> crowding.add(unmask(keys[allocator.buffer(address).getInt((int) address)])));
+        return crowding;
+    }
+
+    /**
+     * Returns false if the value is larger than a slab, encoding it only when
+     * it may be.
+     */
+    @Override
+    public boolean fits(String value) {
+        if (value == null || CHUNK_HEADER + 3L * value.length() <= allocator.slabSize()) {
+            return true; // at most three UTF-8 bytes per char
+        }
+        return size(encode(value)) <= allocator.slabSize();
+    }
+
+    @Override
+    public String get(String key) {
+        int slot = find(mask(key));
+        if (slot < 0) {
+            return null;
+        }
+        ByteBuffer buffer = allocator.buffer(addresses[slot]);
+        int offset = (int) addresses[slot];
+        int length = buffer.getInt(offset + Integer.BYTES);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.position(offset + CHUNK_HEADER);
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String any() {
+        while (keys[cursor] == null) {
+            cursor = (cursor + 1) & mask;
+        }
+        return unmask(keys[cursor]);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public Collection<String> keys() {
+        return new AbstractCollection<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int slot = next(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return slot < keys.length;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        String key = unmask(keys[slot]);
+                        slot = next(slot + 1);
+                        return key;
+                    }
+
+                    private int next(int from) {
+                        while (from < keys.length && keys[from] == null) {
+                            from++;
+                        }
+                        return from;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Returns false when the slabs are full, or when the value is larger than
+     * a slab and can never be stored.
+     */
+    @Override
+    public boolean put(String key, String value) {
+        byte[] bytes = encode(value);
+        int size = size(bytes);
+        if (size > allocator.slabSize()) {
+            return false;
+        }
+        long address = allocator.allocate(size);
+        if (address < 0) {
+            return false;
+        }
+        ByteBuffer buffer = allocator.buffer(address);
+        int offset = (int) address;
+        buffer.putInt(offset + Integer.BYTES, bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            buffer.position(offset + CHUNK_HEADER);
+            buffer.put(bytes);
+        }
+        Object masked = mask(key);
+        int slot = find(masked);
+        if (slot >= 0) {
+            allocator.free(addresses[slot]);
+        } else {
+            if (2 * (count + 1) > keys.length) {
+                grow();
+            }
+            slot = index(masked);
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = masked;
+            count++;
+        }
+        addresses[slot] = address;
+        buffer.putInt(offset, slot);
+        return true;
+    }
+
+    @Override
+    public void remove(String key) {
+        int slot = find(mask(key));
+        if (slot >= 0) {
+            allocator.free(addresses[slot]);
+            delete(slot);
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Empties the slot, moving back the keys after it that would no longer be
+     * found past the empty slot.
+     */
+    private void delete(int slot) {
+        keys[slot] = null;
+        count--;
+        int empty = slot;
+        for (int next = (slot + 1) & mask; keys[next] != null; next = (next + 1) & mask) {
+            int home = index(keys[next]);
+            // keep the key if its home is cyclically within (empty, next]
+            boolean reachable = empty <= next ? empty < home && home <= next : empty < home || home <= next;
+            if (!reachable) {
+                move(next, empty);
+                empty = next;
+            }
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private int find(Object key) {
+        for (int slot = index(key); keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Doubles the table, moving every key to its slot in the new one.
+     */
+    private void grow() {
+        Object[] oldKeys = keys;
+        long[] oldAddresses = addresses;
+        keys = new Object[oldKeys.length * 2];
+        addresses = new long[oldKeys.length * 2];
+        mask = keys.length - 1;
+        shift--;
+        cursor = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = index(oldKeys[i]);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                addresses[slot] = oldAddresses[i];
+                allocator.buffer(addresses[slot]).putInt((int) addresses[slot], slot);
+            }
+        }
+    }
+
+    private int index(Object key) {
+        return key.hashCode() * 0x9E3779B9 >>> shift; // fibonacci hashing spreads similar hash codes
+    }
+
+    private static Object mask(String key) {
+        return key == null ? NULL_KEY : key;
+    }
+
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        addresses[to] = addresses[from];
+        allocator.buffer(addresses[to]).putInt((int) addresses[to], to);
+        keys[from] = null;
+    }
+
+    private static int size(byte[] bytes) {
+        return CHUNK_HEADER + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static String unmask(Object key) {
+        return key == NULL_KEY ? null : (String) key;
+    }
+
+    /**
+     * Maps the region of the file for the slab at the index, the first slab
+     * truncates whatever an earlier cache left in the file.
+     */
+    private static ByteBuffer map(Path file, int index) {
+        Set<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (index == 0) {
+            options.add(StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, (long) index * SLAB_SIZE, SLAB_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map slab " + index + " of " + file, e);
+        }
+    }
+
+}
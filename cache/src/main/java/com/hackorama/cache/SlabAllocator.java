@@ -0,0 +1,309 @@
+package com.hackorama.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
+
+/**
+ * Allocates chunks of memory out of fixed size {@link ByteBuffer} slabs, direct
+ * buffers or regions of a memory mapped file.
+ * Each slab is split into sixteen pages, handed to size classes a run of pages
+ * at a time, so a slab holds chunks of several sizes and a new size needs only
+ * a free page, not a free slab. Classes grow by a quarter from 64 bytes up to
+ * a page, then by a page up to the slab size, a run holds one page of chunks
+ * or one chunk larger than a page. Freed chunks are linked in a free list kept
+ * inside the freed chunks themselves, and a run left with no used chunks gives
+ * its pages back for any size class, so the allocator keeps no per chunk state
+ * on the heap.
+ *
+ * A freed chunk starts with {@link #FREE}, callers must start the chunks they
+ * use with something else. An address is the slab index in the high and the
+ * chunk offset in the low 32 bits.
+ */
+class SlabAllocator {
+
+    static final int FREE = Integer.MIN_VALUE;
+
+    private static final int MINIMUM_CHUNK = 64;
+    private static final int PAGES = 16; // per slab
+    private static final int NONE = -1;
+
+    private static class Slab {
+        private final int index;
+        private final ByteBuffer buffer;
+        private final Run[] runs = new Run[PAGES]; // the run on each page, null for a free page
+
+        private Slab(int index, ByteBuffer buffer) {
+            this.index = index;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Pages of a slab holding chunks of one size class.
+     */
+    private static class Run {
+        private final Slab slab;
+        private final int page;
+        private final int pages;
+        private final int sizeClass;
+        private final int end; // offset after the last page
+        private int carved; // offset of the first chunk never allocated
+        private int free = NONE; // offset of the first freed chunk
+        private int used;
+        private int hand; // next chunk to evict once the class is full
+        private int position; // in the runs of its class
+
+        private Run(Slab slab, int page, int pages, int sizeClass, int pageSize) {
+            this.slab = slab;
+            this.page = page;
+            this.pages = pages;
+            this.sizeClass = sizeClass;
+            this.carved = page * pageSize;
+            this.end = carved + pages * pageSize;
+        }
+    }
+
+    private final int slabSize;
+    private final int pageSize;
+    private final int maximumSlabs;
+    private final IntFunction<ByteBuffer> factory; // creates the buffer of the slab at an index
+    private final int[] chunkSizes;
+    private final int[] hands; // next run to evict from once the class is full, by size class
+    private final List<Slab> slabs = new ArrayList<>();
+    private final List<Deque<Run>> partial = new ArrayList<>(); // runs with free chunks, by size class
+    private final List<List<Run>> runs = new ArrayList<>(); // all runs, by size class
+
+    SlabAllocator(long maximumBytes, int slabSize) {
+        this(maximumBytes, slabSize, index -> ByteBuffer.allocateDirect(slabSize));
+    }
+
+    SlabAllocator(long maximumBytes, int slabSize, IntFunction<ByteBuffer> factory) {
+        if (slabSize % PAGES != 0 || slabSize / PAGES < MINIMUM_CHUNK) {
+            throw new IllegalArgumentException("Slab size " + slabSize + " is not " + PAGES + " pages of "
+                    + MINIMUM_CHUNK + " bytes or more");
+        }
+        this.slabSize = slabSize;
+        this.pageSize = slabSize / PAGES;
+        this.factory = factory;
+        this.maximumSlabs = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maximumBytes / slabSize));
+        int[] sizes = new int[64 + PAGES];
+        int count = 0;
+        for (int size = MINIMUM_CHUNK; size < pageSize; size = (size + size / 4 + 7) & ~7) {
+            sizes[count++] = size;
+        }
+        for (int pages = 1; pages <= PAGES; pages++) {
+            sizes[count++] = pages * pageSize;
+        }
+        chunkSizes = Arrays.copyOf(sizes, count);
+        hands = new int[count];
+        for (int i = 0; i < count; i++) {
+            partial.add(new ArrayDeque<Run>());
+            runs.add(new ArrayList<Run>());
+        }
+    }
+
+    /**
+     * Returns the address of a chunk of at least the given bytes, or -1 if no
+     * run of its size class has room and no pages are free for a new one.
+     *
+     * @throws IllegalArgumentException if the bytes do not fit in a slab
+     */
+    long allocate(int bytes) {
+        int sizeClass = sizeClass(bytes);
+        Deque<Run> runsWithRoom = partial.get(sizeClass);
+        Run run = runsWithRoom.peek();
+        if (run == null) {
+            run = assign(sizeClass);
+            if (run == null) {
+                return NONE;
+            }
+            runsWithRoom.push(run);
+        }
+        int offset;
+        if (run.free != NONE) {
+            offset = run.free;
+            run.free = run.slab.buffer.getInt(offset + Integer.BYTES);
+        } else {
+            offset = run.carved;
+            run.carved += chunkSizes[sizeClass];
+        }
+        run.used++;
+        if (full(run)) {
+            runsWithRoom.poll();
+        }
+        return ((long) run.slab.index << 32) | offset;
+    }
+
+    /**
+     * Returns the slab buffer holding the chunk at the address.
+     */
+    ByteBuffer buffer(long address) {
+        return slabs.get((int) (address >>> 32)).buffer;
+    }
+
+    /**
+     * Frees all chunks, keeping the slab memory for reuse.
+     */
+    void clear() {
+        for (int i = 0; i < chunkSizes.length; i++) {
+            partial.get(i).clear();
+            runs.get(i).clear();
+        }
+        for (Slab slab : slabs) {
+            Arrays.fill(slab.runs, null);
+        }
+    }
+
+    /**
+     * Passes the addresses of the used chunks to free before the given bytes
+     * can be allocated, once {@link #allocate(int)} failed. That is the next
+     * chunk of the size class in turn if the class has runs, all of them full,
+     * or else every chunk on the pages for a new run that hold the fewest used
+     * chunks.
+     */
+    void crowding(int bytes, LongConsumer chunks) {
+        int sizeClass = sizeClass(bytes);
+        int chunkSize = chunkSizes[sizeClass];
+        List<Run> classRuns = runs.get(sizeClass);
+        if (!classRuns.isEmpty()) {
+            Run run = classRuns.get(Math.floorMod(hands[sizeClass]++, classRuns.size()));
+            int start = run.page * pageSize;
+            int offset = start + Math.floorMod(run.hand++, (run.carved - start) / chunkSize) * chunkSize;
+            chunks.accept(((long) run.slab.index << 32) | offset);
+            return;
+        }
+        int pages = pages(sizeClass);
+        Slab victim = null;
+        int victimPage = 0;
+        int fewest = Integer.MAX_VALUE;
+        for (Slab slab : slabs) {
+            for (int page = 0; page + pages <= PAGES; page++) {
+                int used = 0;
+                for (int i = page; i < page + pages; i++) {
+                    Run run = slab.runs[i];
+                    if (run != null && (i == page || run != slab.runs[i - 1])) { // each run once
+                        used += run.used;
+                    }
+                }
+                if (used < fewest) {
+                    fewest = used;
+                    victim = slab;
+                    victimPage = page;
+                }
+            }
+        }
+        if (victim == null) {
+            return;
+        }
+        for (int i = victimPage; i < victimPage + pages; i++) {
+            Run run = victim.runs[i];
+            if (run != null && (i == victimPage || run != victim.runs[i - 1])) {
+                int size = chunkSizes[run.sizeClass];
+                for (int offset = run.page * pageSize; offset < run.carved; offset += size) {
+                    if (victim.buffer.getInt(offset) != FREE) {
+                        chunks.accept(((long) victim.index << 32) | offset);
+                    }
+                }
+            }
+        }
+    }
+
+    void free(long address) {
+        Slab slab = slabs.get((int) (address >>> 32));
+        int offset = (int) address;
+        Run run = slab.runs[offset / pageSize];
+        if (--run.used == 0) {
+            release(run);
+            return;
+        }
+        if (full(run)) {
+            partial.get(run.sizeClass).push(run); // has room again
+        }
+        slab.buffer.putInt(offset, FREE);
+        slab.buffer.putInt(offset + Integer.BYTES, run.free);
+        run.free = offset;
+    }
+
+    /**
+     * Returns the number of bytes reserved in slabs.
+     */
+    long reserved() {
+        return (long) slabs.size() * slabSize;
+    }
+
+    int slabSize() {
+        return slabSize;
+    }
+
+    /**
+     * Returns a new run of the size class on the first free pages found, in a
+     * new slab if none are free, or null if all slabs are in use.
+     */
+    private Run assign(int sizeClass) {
+        int pages = pages(sizeClass);
+        for (Slab slab : slabs) {
+            int free = 0;
+            for (int page = 0; page < PAGES; page++) {
+                free = slab.runs[page] == null ? free + 1 : 0;
+                if (free == pages) {
+                    return assign(slab, page - pages + 1, sizeClass);
+                }
+            }
+        }
+        if (slabs.size() >= maximumSlabs) {
+            return null;
+        }
+        Slab slab = new Slab(slabs.size(), factory.apply(slabs.size()));
+        slabs.add(slab);
+        return assign(slab, 0, sizeClass);
+    }
+
+    private Run assign(Slab slab, int page, int sizeClass) {
+        Run run = new Run(slab, page, pages(sizeClass), sizeClass, pageSize);
+        Arrays.fill(slab.runs, page, page + run.pages, run);
+        List<Run> classRuns = runs.get(sizeClass);
+        run.position = classRuns.size();
+        classRuns.add(run);
+        return run;
+    }
+
+    private boolean full(Run run) {
+        return run.free == NONE && run.carved + chunkSizes[run.sizeClass] > run.end;
+    }
+
+    /**
+     * Returns the number of pages of a run of the size class.
+     */
+    private int pages(int sizeClass) {
+        return (chunkSizes[sizeClass] + pageSize - 1) / pageSize;
+    }
+
+    /**
+     * Gives the pages of a run with no used chunks back for any size class.
+     */
+    private void release(Run run) {
+        partial.get(run.sizeClass).remove(run);
+        List<Run> classRuns = runs.get(run.sizeClass);
+        Run last = classRuns.remove(classRuns.size() - 1);
+        if (last != run) {
+            classRuns.set(run.position, last);
+            last.position = run.position;
+        }
+        Arrays.fill(run.slab.runs, run.page, run.page + run.pages, null);
+    }
+
+    private int sizeClass(int bytes) {
+        if (bytes > slabSize) {
+            throw new IllegalArgumentException("Allocation of " + bytes + " bytes is larger than the slab size " + slabSize);
+        }
+        int sizeClass = Arrays.binarySearch(chunkSizes, bytes);
+        return sizeClass < 0 ? -sizeClass - 1 : sizeClass;
+    }
+
+}
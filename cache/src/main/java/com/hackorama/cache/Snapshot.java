@@ -0,0 +1,245 @@
+package com.hackorama.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot file of cached elements with their policy priorities, written
+ * and read through memory mapped buffers.
+ *
+ * The file holds a header of a magic number, a version and the chunk count,
+ * then the entry count, byte length and CRC32 checksum of each chunk, followed
+ * by the chunks. Each entry is a flag byte, set if the policy tracks the key,
+ * the priority, the key and the value, strings as an int byte length, or -1
+ * for null, followed by the UTF-8 bytes. Each chunk is mapped on its own, so
+ * files larger than a buffer can map are supported, and chunks are decoded in
+ * parallel on load.
+ */
+class Snapshot {
+
+    /**
+     * A cached element and its policy priority.
+     */
+    static class Entry {
+        final String key;
+        final String value;
+        final boolean tracked;
+        final long priority;
+
+        Entry(String key, String value, boolean tracked, long priority) {
+            this.key = key;
+            this.value = value;
+            this.tracked = tracked;
+            this.priority = priority;
+        }
+    }
+
+    static final int CHUNK_SIZE = 4096; // entries per chunk
+
+    private static final int MAGIC = 0x48434348; // "HCCH"
+    private static final int VERSION = 2;
+    private static final int HEADER = 3 * Integer.BYTES;
+    private static final int CHUNK_HEADER = 3 * Integer.BYTES; // count, length and checksum
+
+    private Snapshot() {
+    }
+
+    /**
+     * Reads the chunks of entries in file order, decoding the chunks in
+     * parallel.
+     *
+     * @throws IOException if the file is not a snapshot, or is truncated or
+     *                     corrupt
+     */
+    static List<List<Entry>> read(Path path) throws IOException {
+        int[] counts;
+        int[] checksums;
+        List<ByteBuffer> windows = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, HEADER));
+            if (header.remaining() < HEADER || header.getInt() != MAGIC) {
+                throw new IOException("Not a cache snapshot " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported cache snapshot version " + version + " in " + path);
+            }
+            int chunks = header.getInt();
+            if (chunks < 0 || chunks > (size - HEADER) / CHUNK_HEADER) {
+                throw new IOException("Corrupt cache snapshot " + path);
+            }
+            counts = new int[chunks];
+            checksums = new int[chunks];
+            int[] lengths = new int[chunks];
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, chunks * (long) CHUNK_HEADER);
+            long offset = HEADER + chunks * (long) CHUNK_HEADER;
+            for (int i = 0; i < chunks; i++) {
+                counts[i] = index.getInt();
+                lengths[i] = index.getInt();
+                checksums[i] = index.getInt();
+                if (counts[i] < 0 || lengths[i] < 0) {
+                    throw new IOException("Corrupt cache snapshot " + path);
+                }
+                offset += lengths[i];
+            }
+            if (offset != size) {
+                throw new IOException("Truncated cache snapshot " + path);
+            }
+            offset = HEADER + chunks * (long) CHUNK_HEADER;
+            for (int i = 0; i < chunks; i++) {
+                windows.add(channel.map(FileChannel.MapMode.READ_ONLY, offset, lengths[i]));
+                offset += lengths[i];
+            }
+        }
+        try {
+            return IntStream.range(0, windows.size()).parallel()
+                    .mapToObj(i -> decode(windows.get(i), counts[i], checksums[i])).collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw new IOException("Corrupt cache snapshot " + path, e.getCause());
+        }
+    }
+
+    /**
+     * Writes the chunks of entries to a temporary file next to the path and
+     * then moves it over the path, so a failed write never leaves a partial
+     * snapshot behind.
+     */
+    static void write(Path path, List<List<Entry>> chunks) throws IOException {
+        List<byte[][]> encoded = chunks.parallelStream().map(Snapshot::encode).collect(Collectors.toList());
+        int[] lengths = new int[chunks.size()];
+        for (int i = 0; i < chunks.size(); i++) {
+            long length = 0;
+            for (byte[] bytes : encoded.get(i)) {
+                length += bytes == null ? Integer.BYTES : Integer.BYTES + bytes.length;
+            }
+            length += chunks.get(i).size() * (1L + Long.BYTES);
+            if (length > Integer.MAX_VALUE) { // the largest buffer that can be mapped
+                throw new IOException("Cache snapshot chunk too large " + length);
+            }
+            lengths[i] = (int) length;
+        }
+        long index = chunks.size() * (long) CHUNK_HEADER;
+        if (HEADER + index > Integer.MAX_VALUE) {
+            throw new IOException("Cache snapshot has too many chunks " + chunks.size());
+        }
+        int[] checksums = new int[chunks.size()];
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long offset = HEADER + index;
+            for (int i = 0; i < chunks.size(); i++) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, lengths[i]);
+                List<Entry> entries = chunks.get(i);
+                byte[][] strings = encoded.get(i);
+                for (int j = 0; j < entries.size(); j++) {
+                    buffer.put((byte) (entries.get(j).tracked ? 1 : 0)).putLong(entries.get(j).priority);
+                    putString(buffer, strings[2 * j]);
+                    putString(buffer, strings[2 * j + 1]);
+                }
+                buffer.force();
+                buffer.flip();
+                checksums[i] = checksum(buffer);
+                offset += lengths[i];
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + index);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                buffer.putInt(chunks.get(i).size()).putInt(lengths[i]).putInt(checksums[i]);
+            }
+            buffer.force();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Splits the entries into chunks of {@link #CHUNK_SIZE} entries.
+     */
+    static List<List<Entry>> split(List<Entry> entries) {
+        List<List<Entry>> chunks = new ArrayList<>();
+        for (int start = 0; start < entries.size(); start += CHUNK_SIZE) {
+            chunks.add(entries.subList(start, Math.min(entries.size(), start + CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+    private static int checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Decodes the entries of a chunk, throws an {@link UncheckedIOException}
+     * if its checksum or lengths do not match its entries.
+     */
+    private static List<Entry> decode(ByteBuffer buffer, int count, int checksum) {
+        if (checksum(buffer) != checksum) {
+            throw new UncheckedIOException(new IOException("Chunk checksum mismatch"));
+        }
+        List<Entry> entries = new ArrayList<>(Math.min(count, CHUNK_SIZE));
+        try {
+            for (int i = 0; i < count; i++) {
+                boolean tracked = buffer.get() != 0;
+                long priority = buffer.getLong();
+                String key = getString(buffer);
+                entries.add(new Entry(key, getString(buffer), tracked, priority));
+            }
+        } catch (BufferUnderflowException e) {
+            throw new UncheckedIOException(new IOException("Chunk shorter than its entries", e));
+        }
+        if (buffer.hasRemaining()) {
+            throw new UncheckedIOException(new IOException("Chunk longer than its entries"));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the UTF-8 bytes of the key and value of each entry.
+     */
+    private static byte[][] encode(List<Entry> entries) {
+        byte[][] strings = new byte[entries.size() * 2][];
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            strings[2 * i] = entry.key == null ? null : entry.key.getBytes(StandardCharsets.UTF_8);
+            strings[2 * i + 1] = entry.value == null ? null : entry.value.getBytes(StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new UncheckedIOException(new IOException("String length out of chunk " + length));
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+}
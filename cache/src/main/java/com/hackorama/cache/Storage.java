@@ -0,0 +1,54 @@
+package com.hackorama.cache;
+
+import java.util.Collection;
+
+/**
+ * Holds the cached keys and values for a {@link DataCache}, on the heap or off
+ * the heap.
+ */
+interface Storage {
+
+    void clear();
+
+    boolean contains(String key);
+
+    /**
+     * Returns the keys to evict so the value can be put once a put returned
+     * false, or no keys to evict by the policy instead.
+     */
+    Collection<String> crowding(String value);
+
+    /**
+     * Returns false if the value can never be stored, even with the storage
+     * empty.
+     */
+    boolean fits(String value);
+
+    /**
+     * Returns the value for the key, or null if the key is not stored.
+     */
+    String get(String key);
+
+    /**
+     * Returns any one stored key, the storage must not be empty.
+     */
+    String any();
+
+    boolean isEmpty();
+
+    /**
+     * Returns the stored keys, a view only valid until the storage changes.
+     */
+    Collection<String> keys();
+
+    /**
+     * Stores the value for the key, replacing any old value. Returns false if
+     * there is no room left for the value, the old value is kept then.
+     */
+    boolean put(String key, String value);
+
+    void remove(String key);
+
+    int size();
+
+}
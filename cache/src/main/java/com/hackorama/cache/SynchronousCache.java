@@ -0,0 +1,55 @@
+package com.hackorama.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Blocking {@link Cache} view of an {@link AsyncCache}, returned by
+ * {@link AsyncCache#synchronous()}.
+ */
+class SynchronousCache implements Cache {
+
+    private final AsyncCache cache;
+
+    SynchronousCache(AsyncCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+    }
+
+    @Override
+    public String get(String key) {
+        return join(cache.getAsync(key));
+    }
+
+    @Override
+    public void put(String key, String value) {
+        join(cache.putAsync(key, value));
+    }
+
+    @Override
+    public void put(String key, String value, long duration, TimeUnit unit) {
+        join(cache.putAsync(key, value, duration, unit));
+    }
+
+    @Override
+    public void remove(String key) {
+        join(cache.removeAsync(key));
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
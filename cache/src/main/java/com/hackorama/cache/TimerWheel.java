@@ -0,0 +1,176 @@
+package com.hackorama.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel for key expiration. Timers are kept in buckets of
+ * coarser time spans the further away they expire, so scheduling, rescheduling
+ * and cancelling are O(1) and advancing only visits the buckets whose time has
+ * come. Timers cascade down to finer buckets as their time gets closer and fire
+ * up to a second late, callers that need the exact time check
+ * {@link #expired(String, long)}.
+ */
+class TimerWheel {
+
+    private static class Timer {
+        private final String key;
+        private long time; // fires at, in ticker nanos
+        private long deadline; // latest time allowed by the write
+        private Timer prev;
+        private Timer next;
+
+        private Timer(String key) {
+            this.key = key;
+        }
+    }
+
+    // Bucket spans are powers of two close to a second, a minute, an hour and
+    // a day, the last wheel holds everything further away
+    private static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+    private static final long[] SPANS = { 1L << 30, 1L << 36, 1L << 42, 1L << 47, 1L << 49 };
+
+    private final Map<String, Timer> timers = new HashMap<>();
+    private final Timer[][] wheels = new Timer[BUCKETS.length][];
+    private final long origin; // times are kept relative to it, so ticks never wrap
+    private long nanos;
+
+    TimerWheel(long now) {
+        origin = now;
+        for (int i = 0; i < wheels.length; i++) {
+            wheels[i] = new Timer[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                Timer sentinel = new Timer(null);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                wheels[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Fires the timers in the buckets reached since the last advance, timers
+     * in those buckets that are not due yet cascade down to a finer bucket.
+     */
+    void advance(long now, Consumer<String> expired) {
+        long previous = nanos;
+        now -= origin;
+        nanos = now;
+        for (int i = 0; i < wheels.length; i++) {
+            long previousTicks = previous >>> Long.numberOfTrailingZeros(SPANS[i]);
+            long currentTicks = now >>> Long.numberOfTrailingZeros(SPANS[i]);
+            long delta = currentTicks - previousTicks;
+            if (delta <= 0) {
+                break;
+            }
+            for (long tick = previousTicks + 1; tick <= previousTicks + Math.min(delta, BUCKETS[i]); tick++) {
+                fire(wheels[i][(int) (tick & (BUCKETS[i] - 1))], now, expired);
+            }
+        }
+    }
+
+    void cancel(String key) {
+        Timer timer = timers.remove(key);
+        if (timer != null) {
+            unlink(timer);
+        }
+    }
+
+    void clear() {
+        for (Timer[] wheel : wheels) {
+            for (Timer sentinel : wheel) {
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+        timers.clear();
+    }
+
+    /**
+     * Returns the deadline of the timer of the key, or Long.MAX_VALUE if the
+     * key has no timer.
+     */
+    long deadline(String key) {
+        Timer timer = timers.get(key);
+        return timer == null ? Long.MAX_VALUE : timer.deadline + origin;
+    }
+
+    /**
+     * Returns true if the key has a timer that is due at the given time.
+     */
+    boolean expired(String key, long now) {
+        Timer timer = timers.get(key);
+        return timer != null && timer.time - (now - origin) <= 0;
+    }
+
+    /**
+     * Schedules the key to fire at the time, replacing any timer for the key.
+     * The deadline limits how far later accesses can push the timer.
+     */
+    void schedule(String key, long time, long deadline) {
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            timer = new Timer(key);
+            timers.put(key, timer);
+        } else {
+            unlink(timer);
+        }
+        timer.time = time - origin;
+        timer.deadline = deadline - origin;
+        link(timer);
+    }
+
+    /**
+     * Moves the timer of the key to the time, but not past its deadline.
+     */
+    void touch(String key, long time) {
+        Timer timer = timers.get(key);
+        if (timer != null) {
+            unlink(timer);
+            timer.time = Math.min(time - origin, timer.deadline);
+            link(timer);
+        }
+    }
+
+    private void fire(Timer sentinel, long now, Consumer<String> expired) {
+        Timer timer = sentinel.next;
+        sentinel.prev = sentinel;
+        sentinel.next = sentinel;
+        while (timer != sentinel) {
+            Timer next = timer.next;
+            if (timer.time - now <= 0) {
+                timers.remove(timer.key);
+                expired.accept(timer.key);
+            } else {
+                link(timer);
+            }
+            timer = next;
+        }
+    }
+
+    private void link(Timer timer) {
+        long delay = Math.max(0, timer.time - nanos);
+        int wheel = 0;
+        while (wheel < BUCKETS.length - 1 && delay >= SPANS[wheel + 1]) {
+            wheel++;
+        }
+        int shift = Long.numberOfTrailingZeros(SPANS[wheel]);
+        // buckets fire when the wheel reaches them, so a timer within the
+        // current bucket span waits for the next bucket
+        long ticks = Math.max(timer.time >>> shift, (nanos >>> shift) + 1);
+        Timer sentinel = wheels[wheel][(int) (ticks & (BUCKETS[wheel] - 1))];
+        timer.next = sentinel;
+        timer.prev = sentinel.prev;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
+    }
+
+    private void unlink(Timer timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+}
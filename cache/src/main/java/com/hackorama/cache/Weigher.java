@@ -0,0 +1,26 @@
+package com.hackorama.cache;
+
+/**
+ * Calculates the weight of a cache element, so a cache can be bounded by the
+ * total weight of its elements instead of their count.
+ */
+public interface Weigher {
+
+    /**
+     * Estimated heap bytes of the key and value characters, two bytes each as
+     * UTF-16
+     */
+    public static final Weigher UTF16 = (key, value) -> 2L
+            * ((key == null ? 0 : key.length()) + (value == null ? 0 : value.length()));
+
+    /**
+     * Returns the weight of the element, must not be negative and must always
+     * be the same for the same key and value.
+     *
+     * @param key   the key of the element
+     * @param value the value of the element
+     * @return the weight
+     */
+    public long weigh(String key, String value);
+
+}
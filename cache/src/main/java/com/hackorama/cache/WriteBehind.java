@@ -0,0 +1,245 @@
+package com.hackorama.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes cache changes to a {@link CacheWriter} in the background. Changes are
+ * kept pending for a delay and coalesced by key, so a key changed many times
+ * within the delay is written once, then written in batches with one
+ * {@link CacheWriter#writeAll(Map)} and one {@link CacheWriter#deleteAll}
+ * call. Batches are written one at a time in the order of the changes.
+ *
+ * The pending changes are bounded, once full the change that fills them
+ * writes them all on the calling thread, holding back writers faster than the
+ * store. A pending change never fails its caller, a batch that fails stays
+ * pending and is retried after the delay. While the store fails and the
+ * changes stay full, a change of a key not pending is rejected with the
+ * failure of the store instead of queued, so the cache is left unchanged. A
+ * pending key dropped by the cache, evicted or expired, is written right away
+ * so a later miss reads the latest value from the store.
+ *
+ * Thread safe, one instance can be shared by several caches, like the segments
+ * of a concurrent cache. Call {@link #flush()} before shutdown, pending
+ * changes are otherwise lost.
+ *
+ * <pre>
+ * Cache users = new ConcurrentDataCache().size(1024)
+ *         .writeBehind(new WriteBehind(database).delay(5, TimeUnit.SECONDS).maximumPending(50_000));
+ * </pre>
+ */
+public class WriteBehind implements CacheWriter {
+
+    /**
+     * Single daemon thread for the delayed writes of all write behind queues
+     * without their own executor, created on first use.
+     */
+    private static class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = Executors
+                .newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "cache-write-behind");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private static final long DEFAULT_DELAY = TimeUnit.SECONDS.toNanos(1);
+    private static final int DEFAULT_MAXIMUM_PENDING = 10_000;
+
+    private final CacheWriter writer;
+    private final Object writing = new Object(); // held while writing a batch, keeps batches in order
+    private Map<String, String> pending = new LinkedHashMap<>(); // null value for a delete
+    private ScheduledExecutorService executor; // null for the shared scheduler
+    private long delay = DEFAULT_DELAY;
+    private int maximumPending = DEFAULT_MAXIMUM_PENDING;
+    private boolean scheduled;
+
+    /**
+     * @param writer writes the batches of changes to the store
+     */
+    public WriteBehind(CacheWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Queues a delete of the key, replacing any pending change of the key.
+     */
+    @Override
+    public void delete(String key) {
+        enqueue(key, null);
+    }
+
+    /**
+     * Queues a write of the key, replacing any pending change of the key.
+     */
+    @Override
+    public void write(String key, String value) {
+        enqueue(key, value);
+    }
+
+    /**
+     * Sets the time changes stay pending before they are written, defaults to
+     * one second. Longer delays coalesce more changes into fewer writes.
+     */
+    public WriteBehind delay(long duration, TimeUnit unit) {
+        this.delay = unit.toNanos(duration);
+        return this;
+    }
+
+    /**
+     * Sets the executor for the delayed writes, defaults to a single daemon
+     * thread shared by all write behind queues.
+     */
+    public WriteBehind executor(ScheduledExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Writes all pending changes now on the calling thread, after any batch
+     * being written in the background.
+     *
+     * @throws RuntimeException thrown by the writer, the changes stay pending
+     */
+    public void flush() {
+        synchronized (writing) {
+            Map<String, String> batch;
+            synchronized (this) {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            }
+            write(batch);
+        }
+    }
+
+    /**
+     * Sets the most changes kept pending, defaults to 10,000.
+     */
+    public WriteBehind maximumPending(int maximumPending) {
+        this.maximumPending = Math.max(1, maximumPending);
+        return this;
+    }
+
+    /**
+     * Returns the number of keys with a pending change.
+     */
+    public synchronized int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Writes the pending change of a key dropped by the cache, if any. Never
+     * throws into the eviction or expiry that dropped it, a failed write stays
+     * pending and is retried after the delay.
+     */
+    void evicted(String key) {
+        synchronized (this) {
+            if (!pending.containsKey(key)) {
+                return;
+            }
+        }
+        synchronized (writing) {
+            String value;
+            synchronized (this) {
+                if (!pending.containsKey(key)) { // written by a batch meanwhile
+                    return;
+                }
+                value = pending.remove(key);
+            }
+            try {
+                write(Collections.singletonMap(key, value));
+            } catch (RuntimeException e) {
+                // pending again, retried after the delay
+            }
+        }
+    }
+
+    private void enqueue(String key, String value) {
+        boolean full;
+        while (true) {
+            synchronized (this) {
+                boolean replaced = pending.containsKey(key);
+                if (replaced || pending.size() < maximumPending) {
+                    pending.put(key, value);
+                    full = !replaced && pending.size() >= maximumPending;
+                    if (!full) {
+                        schedule();
+                    }
+                    break;
+                }
+            }
+            flush(); // still full after a failed write, throws before queueing the change
+        }
+        if (full) {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                // the change is pending, retried after the delay with the others
+            }
+        }
+    }
+
+    /**
+     * Schedules a flush after the delay, unless one is scheduled already.
+     */
+    private synchronized void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            (executor == null ? Scheduler.INSTANCE : executor).schedule(this::scheduledFlush, delay,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void scheduledFlush() {
+        synchronized (this) {
+            scheduled = false;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // the batch is pending again and retried after the delay
+        }
+    }
+
+    /**
+     * Writes a batch, keeping it pending if the writer fails, behind any
+     * newer changes of the same keys.
+     */
+    private void write(Map<String, String> batch) {
+        Map<String, String> writes = new LinkedHashMap<>();
+        List<String> deletes = new ArrayList<>();
+        for (Map.Entry<String, String> change : batch.entrySet()) {
+            if (change.getValue() == null) {
+                deletes.add(change.getKey());
+            } else {
+                writes.put(change.getKey(), change.getValue());
+            }
+        }
+        try {
+            if (!writes.isEmpty()) {
+                writer.writeAll(writes);
+            }
+            if (!deletes.isEmpty()) {
+                writer.deleteAll(deletes);
+            }
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                Map<String, String> retry = new LinkedHashMap<>(batch);
+                retry.putAll(pending);
+                pending = retry;
+                schedule();
+            }
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.hackorama.cache.policy;
+
+import java.util.Objects;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Adaptive Replacement Cache (ARC) policy. Keys seen once are kept in a recency
+ * list and keys seen again move to a frequency list. Keys evicted from either
+ * list are remembered in a ghost list, and a new key found in a ghost list
+ * shifts the target split between the two lists towards the list that evicted
+ * it too early, so the policy tunes itself between recency and frequency as
+ * the workload changes.
+ *
+ * Ghost lists hold only keys and are bounded by the cache size. Sized from the
+ * cache by {@link #capacity(long)}, always evicts the least valuable key.
+ */
+public class ArcPolicy extends Policy {
+
+    private static final long DEFAULT_CAPACITY = 10; // the default cache size
+
+    private final RecencyOrdering recent; // T1, seen once
+    private final RecencyOrdering frequent = new RecencyOrdering(); // T2, seen at least twice
+    private final RecencyOrdering recentGhosts = new RecencyOrdering(); // B1, evicted from T1
+    private final RecencyOrdering frequentGhosts = new RecencyOrdering(); // B2, evicted from T2
+    private long capacity = DEFAULT_CAPACITY;
+    private long target; // p, the target size of the recent list
+    private String added; // the key just added and not yet cached, never the victim
+    private boolean frequentGhostHit; // the last added key was in B2
+    private long ticks;
+
+    public ArcPolicy() {
+        this(new RecencyOrdering());
+    }
+
+    private ArcPolicy(RecencyOrdering recent) {
+        super(recent);
+        this.recent = recent;
+    }
+
+    @Override
+    public Policy capacity(long capacity) {
+        this.capacity = Math.max(1, capacity);
+        target = Math.min(target, this.capacity);
+        return this;
+    }
+
+    @Override
+    public void clear() {
+        recent.clear();
+        frequent.clear();
+        recentGhosts.clear();
+        frequentGhosts.clear();
+        target = 0;
+        added = null;
+    }
+
+    /**
+     * Evicts from the recent list while it is over its target size, else from
+     * the frequent list, and remembers the key in the matching ghost list.
+     */
+    @Override
+    public String evict() {
+        boolean fromRecent;
+        if (recent.size() == 0 || frequent.size() == 0) {
+            fromRecent = recent.size() > 0;
+        } else if (Objects.equals(recent.peek(true), added)) {
+            fromRecent = false; // the key being added is all the recent list holds
+        } else {
+            long recentSize = recent.size() - (recent.contains(added) ? 1 : 0);
+            fromRecent = recentSize > target || (frequentGhostHit && recentSize == target);
+        }
+        String key = fromRecent ? recent.poll(true) : frequent.poll(true);
+        if (key == null) {
+            return null;
+        }
+        (fromRecent ? recentGhosts : frequentGhosts).set(key, ticks++);
+        trimGhosts();
+        return key;
+    }
+
+    /**
+     * Not supported, evicting the most valuable key defeats adaptation
+     */
+    @Override
+    public Policy most() {
+        throw new UnsupportedOperationException("ARC policy only evicts the least valuable key");
+    }
+
+    /**
+     * Passes the recent keys with priority zero and the frequent keys with
+     * priority one, each from the least to the most recent.
+     */
+    @Override
+    public void priorities(ObjLongConsumer<String> consumer) {
+        recent.forEach((key, tick) -> consumer.accept(key, 0));
+        frequent.forEach((key, tick) -> consumer.accept(key, 1));
+    }
+
+    /**
+     * Drops the key from the cached lists without remembering it as a ghost,
+     * a removed key was not evicted too early.
+     */
+    @Override
+    public void remove(String key) {
+        if (!recent.remove(key)) {
+            frequent.remove(key);
+        }
+        if (Objects.equals(key, added)) {
+            added = null;
+        }
+    }
+
+    @Override
+    public void restore(String key, long priority) {
+        (priority == 0 ? recent : frequent).set(key, ticks++);
+    }
+
+    @Override
+    public long size() {
+        return recent.size() + frequent.size() + recentGhosts.size() + frequentGhosts.size();
+    }
+
+    @Override
+    public void trackReads(String key, String value) {
+        access(key);
+        added = null;
+    }
+
+    @Override
+    public void trackWrites(String key, String value) {
+        if (access(key)) {
+            added = null;
+            return;
+        }
+        frequentGhostHit = false;
+        if (recentGhosts.remove(key)) {
+            // evicted from recent too early, grow the recent target
+            target = Math.min(capacity, target + Math.max(1, frequentGhosts.size() / (recentGhosts.size() + 1)));
+            frequent.set(key, ticks++);
+        } else if (frequentGhosts.remove(key)) {
+            // evicted from frequent too early, shrink the recent target
+            target = Math.max(0, target - Math.max(1, recentGhosts.size() / (frequentGhosts.size() + 1)));
+            frequent.set(key, ticks++);
+            frequentGhostHit = true;
+        } else {
+            recent.set(key, ticks++);
+        }
+        added = key;
+        trimGhosts();
+    }
+
+    /**
+     * Moves a cached key to the most recent end of the frequent list, returns
+     * false if the key is not cached.
+     */
+    private boolean access(String key) {
+        if (recent.remove(key) || frequent.contains(key)) {
+            frequent.set(key, ticks++);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Keeps the recent list and its ghosts within the cache size, and all
+     * lists within twice the cache size.
+     */
+    private void trimGhosts() {
+        while (recentGhosts.size() > 0 && recent.size() + recentGhosts.size() > capacity) {
+            recentGhosts.poll(true);
+        }
+        while (frequentGhosts.size() > 0
+                && recent.size() + frequent.size() + recentGhosts.size() + frequentGhosts.size() > 2 * capacity) {
+            frequentGhosts.poll(true);
+        }
+    }
+
+}
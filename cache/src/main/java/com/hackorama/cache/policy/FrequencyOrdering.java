@@ -0,0 +1,209 @@
+package com.hackorama.cache.policy;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Ordering for access counts, kept as a linked list of frequency buckets where
+ * each bucket links its keys in the order they reached that frequency.
+ * Increment and poll are O(1), setting an arbitrary priority walks the buckets.
+ * Emptied buckets are kept for reuse, so once the tracked keys stop growing
+ * nothing is allocated.
+ */
+class FrequencyOrdering extends Ordering {
+
+    private static class Bucket {
+        private long frequency;
+        private Node head;
+        private Node tail;
+        private Bucket prev;
+        private Bucket next;
+    }
+
+    private static class Node extends NodeTable.Node {
+        private Bucket bucket;
+        private Node prev;
+        private Node next;
+    }
+
+    private final NodeTable<Node> nodes = new NodeTable<>(Node::new);
+    private Bucket head; // lowest frequency
+    private Bucket tail; // highest frequency
+    private Bucket free; // emptied buckets kept for reuse, linked by next
+
+    @Override
+    void clear() {
+        nodes.clear();
+        head = null;
+        tail = null;
+    }
+
+    @Override
+    boolean contains(String key) {
+        return nodes.get(key) != null;
+    }
+
+    @Override
+    void forEach(ObjLongConsumer<String> consumer) {
+        for (Bucket bucket = head; bucket != null; bucket = bucket.next) {
+            for (Node node = bucket.head; node != null; node = node.next) {
+                consumer.accept(node.key, bucket.frequency);
+            }
+        }
+    }
+
+    @Override
+    void increment(String key) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            add(nodes.add(key), bucket(1));
+            return;
+        }
+        Bucket current = node.bucket;
+        Bucket next = current.next;
+        if (next == null || next.frequency != current.frequency + 1) {
+            next = insertBefore(next, current.frequency + 1);
+        }
+        detach(node);
+        add(node, next);
+    }
+
+    @Override
+    String peek(boolean least) {
+        Bucket bucket = least ? head : tail;
+        if (bucket == null) {
+            return null;
+        }
+        return least ? bucket.head.key : bucket.tail.key;
+    }
+
+    @Override
+    String poll(boolean least) {
+        Bucket bucket = least ? head : tail;
+        if (bucket == null) {
+            return null;
+        }
+        Node node = least ? bucket.head : bucket.tail;
+        String key = node.key;
+        detach(node);
+        nodes.remove(node);
+        return key;
+    }
+
+    @Override
+    boolean remove(String key) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            return false;
+        }
+        detach(node);
+        nodes.remove(node);
+        return true;
+    }
+
+    @Override
+    void set(String key, long priority) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = nodes.add(key);
+        } else {
+            detach(node);
+        }
+        add(node, bucket(priority));
+    }
+
+    @Override
+    int size() {
+        return nodes.size();
+    }
+
+    private void add(Node node, Bucket bucket) {
+        node.bucket = bucket;
+        node.prev = bucket.tail;
+        node.next = null;
+        if (bucket.tail == null) {
+            bucket.head = node;
+        } else {
+            bucket.tail.next = node;
+        }
+        bucket.tail = node;
+    }
+
+    /**
+     * Finds or links the bucket for the frequency, walking up from the lowest
+     * frequency bucket, or straight at the tail for the highest frequency like
+     * when restoring in order.
+     */
+    private Bucket bucket(long frequency) {
+        if (tail != null && tail.frequency <= frequency) {
+            return tail.frequency == frequency ? tail : insertBefore(null, frequency);
+        }
+        Bucket bucket = head;
+        while (bucket != null && bucket.frequency < frequency) {
+            bucket = bucket.next;
+        }
+        return bucket == null || bucket.frequency != frequency ? insertBefore(bucket, frequency) : bucket;
+    }
+
+    /**
+     * Unlinks the node from its bucket, and the bucket from the list if it is
+     * left empty, keeping the bucket for reuse.
+     */
+    private void detach(Node node) {
+        Bucket bucket = node.bucket;
+        if (node.prev == null) {
+            bucket.head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            bucket.tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.bucket = null;
+        if (bucket.head == null) {
+            if (bucket.prev == null) {
+                head = bucket.next;
+            } else {
+                bucket.prev.next = bucket.next;
+            }
+            if (bucket.next == null) {
+                tail = bucket.prev;
+            } else {
+                bucket.next.prev = bucket.prev;
+            }
+            bucket.prev = null;
+            bucket.next = free;
+            free = bucket;
+        }
+    }
+
+    /**
+     * Links a new bucket before the given bucket, or at the tail for null.
+     */
+    private Bucket insertBefore(Bucket next, long frequency) {
+        Bucket bucket = free;
+        if (bucket == null) {
+            bucket = new Bucket();
+        } else {
+            free = bucket.next;
+        }
+        bucket.frequency = frequency;
+        bucket.next = next;
+        bucket.prev = next == null ? tail : next.prev;
+        if (bucket.prev == null) {
+            head = bucket;
+        } else {
+            bucket.prev.next = bucket;
+        }
+        if (next == null) {
+            tail = bucket;
+        } else {
+            next.prev = bucket;
+        }
+        return bucket;
+    }
+
+}
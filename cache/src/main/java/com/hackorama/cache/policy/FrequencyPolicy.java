@@ -5,6 +5,10 @@ package com.hackorama.cache.policy;
  */
 public class FrequencyPolicy extends Policy {
 
+    public FrequencyPolicy() {
+        super(new FrequencyOrdering());
+    }
+
     @Override
     public void trackReads(String key, String value) {
         incrementPriority(key);
@@ -0,0 +1,98 @@
+package com.hackorama.cache.policy;
+
+import java.util.Arrays;
+
+/**
+ * Count-min sketch of key access frequencies with four rows of 4 bit counters,
+ * packed sixteen to a long, so memory stays fixed no matter how many keys are
+ * seen. All counters are halved after a sample of increments, so old
+ * popularity fades away.
+ */
+class FrequencySketch {
+
+    private static final int MAXIMUM = 15;
+    private static final long HALF = 0x7777777777777777L; // clears the bit shifted in from the next counter
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L };
+
+    private long[][] table; // counter i of a row is nibble i & 15 of long i >>> 4
+    private int mask;
+    private int sampleSize;
+    private int additions;
+
+    FrequencySketch() {
+        resize(16);
+    }
+
+    void clear() {
+        for (long[] row : table) {
+            Arrays.fill(row, 0L);
+        }
+        additions = 0;
+    }
+
+    /**
+     * Returns the estimated frequency of the key, never less than the actual
+     * frequency since the last aging.
+     */
+    int frequency(String key) {
+        int hash = spread(key);
+        int frequency = MAXIMUM;
+        for (int i = 0; i < table.length; i++) {
+            frequency = Math.min(frequency, counter(table[i], index(hash, i)));
+        }
+        return frequency;
+    }
+
+    void increment(String key) {
+        int hash = spread(key);
+        for (int i = 0; i < table.length; i++) {
+            int index = index(hash, i);
+            if (counter(table[i], index) < MAXIMUM) {
+                table[i][index >>> 4] += 1L << ((index & 15) << 2);
+            }
+        }
+        if (++additions == sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * Sizes the rows for the number of keys expected in the cache, dropping
+     * the counts so far.
+     */
+    void resize(long capacity) {
+        int width = Integer.highestOneBit((int) Math.max(16, Math.min(capacity, 1 << 24)) - 1) << 1;
+        table = new long[SEEDS.length][width >>> 4];
+        mask = width - 1;
+        sampleSize = 10 * width;
+        additions = 0;
+    }
+
+    private void age() {
+        for (long[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = (row[i] >>> 1) & HALF;
+            }
+        }
+        additions /= 2;
+    }
+
+    private static int counter(long[] row, int index) {
+        return (int) (row[index >>> 4] >>> ((index & 15) << 2)) & MAXIMUM;
+    }
+
+    private int index(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        hash ^= hash >>> 17;
+        hash *= 0xed5ad4bb;
+        return hash ^ (hash >>> 11);
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.hackorama.cache.policy;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Hash table of the nodes of an {@link Ordering} by key, chained through the
+ * nodes themselves so a tracked key needs no separate map entry. Removed nodes
+ * are kept for the next added key, so once the table has grown to the number
+ * of tracked keys adding and removing keys allocates nothing.
+ */
+class NodeTable<N extends NodeTable.Node> {
+
+    /**
+     * A tracked key, extended by each ordering with its own links.
+     */
+    static class Node {
+        String key;
+        int hash;
+        Node chain; // next node in the bucket, or in the free list
+    }
+
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private final Supplier<N> factory;
+    private Node[] table = new Node[MINIMUM_CAPACITY];
+    private int size;
+    private Node free; // removed nodes kept for reuse
+
+    NodeTable(Supplier<N> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Adds a node for the key, which must not be in the table already.
+     */
+    @SuppressWarnings("unchecked")
+    N add(String key) {
+        Node node = free;
+        if (node == null) {
+            node = factory.get();
+        } else {
+            free = node.chain;
+        }
+        if (++size > table.length - (table.length >>> 2)) {
+            resize();
+        }
+        node.key = key;
+        node.hash = hash(key);
+        int index = node.hash & (table.length - 1);
+        node.chain = table[index];
+        table[index] = node;
+        return (N) node;
+    }
+
+    void clear() {
+        Arrays.fill(table, null);
+        size = 0;
+    }
+
+    /**
+     * Returns the node for the key, or null if the key is not in the table.
+     */
+    @SuppressWarnings("unchecked")
+    N get(String key) {
+        int hash = hash(key);
+        for (Node node = table[hash & (table.length - 1)]; node != null; node = node.chain) {
+            if (node.hash == hash && Objects.equals(node.key, key)) {
+                return (N) node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes the node and keeps it for reuse, so the caller must be done with
+     * it, its key included.
+     */
+    void remove(N node) {
+        int index = node.hash & (table.length - 1);
+        if (table[index] == node) {
+            table[index] = node.chain;
+        } else {
+            Node prev = table[index];
+            while (prev.chain != node) {
+                prev = prev.chain;
+            }
+            prev.chain = node.chain;
+        }
+        size--;
+        node.key = null;
+        node.chain = free;
+        free = node;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static int hash(String key) {
+        int hash = key == null ? 0 : key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private void resize() {
+        Node[] old = table;
+        table = new Node[old.length * 2];
+        for (Node node : old) {
+            while (node != null) {
+                Node chain = node.chain;
+                int index = node.hash & (table.length - 1);
+                node.chain = table[index];
+                table[index] = node;
+                node = chain;
+            }
+        }
+    }
+
+}
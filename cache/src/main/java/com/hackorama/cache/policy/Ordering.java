@@ -0,0 +1,60 @@
+package com.hackorama.cache.policy;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Keeps track of element keys and their priorities for a {@link Policy}, so the
+ * least or the most prioritized key can be found without scanning.
+ */
+abstract class Ordering {
+
+    /**
+     * Removes all keys from this ordering
+     */
+    abstract void clear();
+
+    /**
+     * Returns true if the key is tracked.
+     */
+    abstract boolean contains(String key);
+
+    /**
+     * Passes each key and its priority to the consumer, from the least to the
+     * most prioritized key, so setting them again in the same order restores
+     * this ordering.
+     */
+    abstract void forEach(ObjLongConsumer<String> consumer);
+
+    /**
+     * Adds one to the priority of the key, a new key starts with priority one.
+     */
+    abstract void increment(String key);
+
+    /**
+     * Returns the least (or the most) prioritized key without removing it, or
+     * null if there are no keys tracked.
+     */
+    abstract String peek(boolean least);
+
+    /**
+     * Removes and returns the least (or the most) prioritized key, or null if
+     * there are no keys tracked.
+     */
+    abstract String poll(boolean least);
+
+    /**
+     * Removes the key, returns false if the key was not tracked.
+     */
+    abstract boolean remove(String key);
+
+    /**
+     * Sets the priority of the key, replacing any old priority.
+     */
+    abstract void set(String key, long priority);
+
+    /**
+     * Returns the number of keys tracked.
+     */
+    abstract int size();
+
+}
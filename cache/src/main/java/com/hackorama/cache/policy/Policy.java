@@ -1,8 +1,7 @@
 package com.hackorama.cache.policy;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.function.ObjLongConsumer;
 
 /**
  * Defines base policy for ({@link com.hackorama.cache.Cache}
@@ -10,21 +9,36 @@ import java.util.PriorityQueue;
 public abstract class Policy {
 
     protected boolean order = true; // true natural order, false reverse order
-    protected Map<String, Long> priorities = new HashMap<>();
-    PriorityQueue<Priority> priorityQueue = new PriorityQueue<>();
+    private final Ordering ordering;
+
+    /**
+     * Policy with sorted priority tracking, supports any priority values
+     */
+    public Policy() {
+        this(new SortedOrdering());
+    }
+
+    Policy(Ordering ordering) {
+        this.ordering = ordering;
+    }
+
+    /**
+     * Sets the number of elements the cache holds, for policies that size
+     * their tracking by it.
+     *
+     * @param capacity the cache size
+     * @return this policy
+     */
+    public Policy capacity(long capacity) {
+        return this;
+    }
 
     public void clear() {
-        priorities.clear();
-        priorityQueue.clear();
+        ordering.clear();
     }
 
     public String evict() {
-        Priority counter = priorityQueue.poll();
-        if(counter == null) {
-            return null;
-        }
-        priorities.remove(counter.getKey());
-        return  counter.getKey();
+        return ordering.poll(order);
     }
 
     public Policy least() {
@@ -37,38 +51,73 @@ public abstract class Policy {
         return this;
     }
 
-    protected void setPriority(String key, Long value) {
-        priorities.put(key, new Long(value));
-        priorityQueue.add(new Priority(key, value, order));
+    /**
+     * Passes each tracked key and its priority to the consumer, from the least
+     * to the most prioritized key, to save the policy state.
+     */
+    public void priorities(ObjLongConsumer<String> consumer) {
+        ordering.forEach(consumer);
     }
 
-    protected void replacePriority(String key, Long value) {
-        Long priority = priorities.get(key);
-        if (priority == null) {
-            priority = value;
-        } else {
-            priorityQueue.remove(new Priority(key, priority, order));
-        }
-        priorities.put(key, priority);
-        priorityQueue.add(new Priority(key, priority, order));
+    /**
+     * Stops tracking the key, called when the key leaves the cache other than
+     * by {@link #evict()}, like a remove or an expiry, so no metadata is kept
+     * for keys no longer cached.
+     */
+    public void remove(String key) {
+        ordering.remove(key);
+    }
 
+    /**
+     * Tracks the key with a priority passed by {@link #priorities}, restoring
+     * the policy state when called for the keys in the same order.
+     */
+    public void restore(String key, long priority) {
+        ordering.set(key, priority);
     }
 
-    protected void incrementPriority(String key) {
-        Long priority = priorities.get(key);
-        if (priority == null) {
-            priority = (long) 1;
-        } else {
-            priorityQueue.remove(new Priority(key, priority, order));
-            priority++;
-        }
-        priorities.put(key, priority);
-        priorityQueue.add(new Priority(key, priority, order));
+    /**
+     * Returns the number of keys tracked, ghost keys included.
+     */
+    public long size() {
+        return ordering.size();
+    }
+
+    protected void setPriority(String key, long value) {
+        ordering.set(key, value);
+    }
 
+    protected void replacePriority(String key, long value) {
+        ordering.set(key, value);
+    }
+
+    protected void incrementPriority(String key) {
+        ordering.increment(key);
     }
 
     public abstract void trackReads(String key, String value);
 
     public abstract void trackWrites(String key, String value);
 
+    /**
+     * Tracks a batch of reads in iteration order, a key missing from the cache
+     * has a null value. Policies can override it to share work across the
+     * batch.
+     */
+    public void trackReads(Map<String, String> reads) {
+        for (Map.Entry<String, String> read : reads.entrySet()) {
+            trackReads(read.getKey(), read.getValue());
+        }
+    }
+
+    /**
+     * Tracks a batch of writes in iteration order. Policies can override it to
+     * share work across the batch.
+     */
+    public void trackWrites(Map<String, String> writes) {
+        for (Map.Entry<String, String> write : writes.entrySet()) {
+            trackWrites(write.getKey(), write.getValue());
+        }
+    }
+
 }
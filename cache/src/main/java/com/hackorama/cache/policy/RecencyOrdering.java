@@ -0,0 +1,124 @@
+package com.hackorama.cache.policy;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Ordering for ever increasing priorities like access or add time, kept as an
+ * intrusive doubly linked list where the head is the least and the tail is the
+ * most recent key. All operations are O(1) and allocate nothing once the
+ * tracked keys stop growing.
+ */
+class RecencyOrdering extends Ordering {
+
+    private static class Node extends NodeTable.Node {
+        private long priority;
+        private Node prev;
+        private Node next;
+    }
+
+    private final NodeTable<Node> nodes = new NodeTable<>(Node::new);
+    private Node head;
+    private Node tail;
+
+    @Override
+    void clear() {
+        nodes.clear();
+        head = null;
+        tail = null;
+    }
+
+    @Override
+    boolean contains(String key) {
+        return nodes.get(key) != null;
+    }
+
+    @Override
+    void forEach(ObjLongConsumer<String> consumer) {
+        for (Node node = head; node != null; node = node.next) {
+            consumer.accept(node.key, node.priority);
+        }
+    }
+
+    @Override
+    void increment(String key) {
+        Node node = nodes.get(key);
+        set(key, node == null ? 1 : node.priority + 1);
+    }
+
+    @Override
+    String peek(boolean least) {
+        Node node = least ? head : tail;
+        return node == null ? null : node.key;
+    }
+
+    @Override
+    String poll(boolean least) {
+        Node node = least ? head : tail;
+        if (node == null) {
+            return null;
+        }
+        String key = node.key;
+        unlink(node);
+        nodes.remove(node);
+        return key;
+    }
+
+    @Override
+    boolean remove(String key) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        nodes.remove(node);
+        return true;
+    }
+
+    /**
+     * Moves the key to the most recent end, the priority is expected to be
+     * not less than the priority of any tracked key.
+     */
+    @Override
+    void set(String key, long priority) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = nodes.add(key);
+        } else {
+            unlink(node);
+        }
+        node.priority = priority;
+        link(node);
+    }
+
+    @Override
+    int size() {
+        return nodes.size();
+    }
+
+    private void link(Node node) {
+        node.prev = tail;
+        node.next = null;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+    }
+
+    private void unlink(Node node) {
+        if (node.prev == null) {
+            head = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+}
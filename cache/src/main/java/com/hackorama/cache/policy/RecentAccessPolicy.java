@@ -1,15 +1,29 @@
 package com.hackorama.cache.policy;
 
+import java.util.Map;
+
 /**
  * Access time based cache policy.
  */
 public class RecentAccessPolicy extends Policy {
 
+    public RecentAccessPolicy() {
+        super(new RecencyOrdering());
+    }
+
     @Override
     public void trackReads(String key, String value) {
         replacePriority(key, System.nanoTime());
     }
 
+    @Override
+    public void trackReads(Map<String, String> reads) {
+        long now = System.nanoTime(); // one clock read, the batch keeps its iteration order
+        for (String key : reads.keySet()) {
+            replacePriority(key, now);
+        }
+    }
+
     @Override
     public void trackWrites(String key, String value) {
         // Recently accessed policy does not track writes
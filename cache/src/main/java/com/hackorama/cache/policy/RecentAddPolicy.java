@@ -1,10 +1,16 @@
 package com.hackorama.cache.policy;
 
+import java.util.Map;
+
 /**
  * Add time based cache policy.
  */
 public class RecentAddPolicy extends Policy {
 
+    public RecentAddPolicy() {
+        super(new RecencyOrdering());
+    }
+
     @Override
     public void trackReads(String key, String value) {
         // Recently added policy does not track reads
@@ -15,4 +21,12 @@ public class RecentAddPolicy extends Policy {
         replacePriority(key, System.nanoTime());
     }
 
+    @Override
+    public void trackWrites(Map<String, String> writes) {
+        long now = System.nanoTime(); // one clock read, the batch keeps its iteration order
+        for (String key : writes.keySet()) {
+            replacePriority(key, now);
+        }
+    }
+
 }
@@ -12,7 +12,7 @@ public class SizePolicy extends Policy {
 
     @Override
     public void trackWrites(String key, String value) {
-        setPriority(key, new Long(value.length()));
+        setPriority(key, value.length());
     }
 
 }
@@ -0,0 +1,182 @@
+package com.hackorama.cache.policy;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Ordering for arbitrary priorities like size, kept in a binary heap where each
+ * node knows its heap position, with equal priorities in insertion order. The
+ * heap is ordered for the least or the most key as last asked, and reordered in
+ * O(n) when the other end is asked for. Updates are O(log n) and allocate
+ * nothing once the tracked keys stop growing.
+ */
+class SortedOrdering extends Ordering {
+
+    private static class Node extends NodeTable.Node {
+        private long priority;
+        private long sequence;
+        private int index; // position in the heap
+    }
+
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private final NodeTable<Node> nodes = new NodeTable<>(Node::new);
+    private Node[] heap = new Node[MINIMUM_CAPACITY];
+    private int size;
+    private boolean least = true; // the end at the top of the heap
+    private long sequence;
+
+    @Override
+    void clear() {
+        nodes.clear();
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+    }
+
+    @Override
+    boolean contains(String key) {
+        return nodes.get(key) != null;
+    }
+
+    /**
+     * Sorts a copy of the heap, the heap itself is only partially ordered.
+     */
+    @Override
+    void forEach(ObjLongConsumer<String> consumer) {
+        Node[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, Comparator.<Node>comparingLong(node -> node.priority).thenComparingLong(node -> node.sequence));
+        for (Node node : sorted) {
+            consumer.accept(node.key, node.priority);
+        }
+    }
+
+    @Override
+    void increment(String key) {
+        Node node = nodes.get(key);
+        set(key, node == null ? 1 : node.priority + 1);
+    }
+
+    @Override
+    String peek(boolean least) {
+        if (size == 0) {
+            return null;
+        }
+        order(least);
+        return heap[0].key;
+    }
+
+    @Override
+    String poll(boolean least) {
+        if (size == 0) {
+            return null;
+        }
+        order(least);
+        Node node = heap[0];
+        String key = node.key;
+        removeAt(0);
+        nodes.remove(node);
+        return key;
+    }
+
+    @Override
+    boolean remove(String key) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            return false;
+        }
+        removeAt(node.index);
+        nodes.remove(node);
+        return true;
+    }
+
+    @Override
+    void set(String key, long priority) {
+        Node node = nodes.get(key);
+        if (node == null) {
+            node = nodes.add(key);
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+            }
+            node.index = size;
+            heap[size++] = node;
+        }
+        node.priority = priority;
+        node.sequence = sequence++;
+        siftDown(node.index);
+        siftUp(node.index);
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if node a comes out of the heap before node b.
+     */
+    private boolean before(Node a, Node b) {
+        if (a.priority != b.priority) {
+            return (a.priority < b.priority) == least;
+        }
+        return (a.sequence < b.sequence) == least;
+    }
+
+    /**
+     * Reorders the heap for the least or the most key if needed.
+     */
+    private void order(boolean least) {
+        if (this.least != least) {
+            this.least = least;
+            for (int index = size / 2 - 1; index >= 0; index--) {
+                siftDown(index);
+            }
+        }
+    }
+
+    private void removeAt(int index) {
+        Node last = heap[--size];
+        heap[size] = null;
+        if (index != size) {
+            last.index = index;
+            heap[index] = last;
+            siftDown(index);
+            siftUp(last.index);
+        }
+    }
+
+    private void siftDown(int index) {
+        Node node = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], node)) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = node;
+        node.index = index;
+    }
+
+    private void siftUp(int index) {
+        Node node = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(node, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+        heap[index] = node;
+        node.index = index;
+    }
+
+}
@@ -0,0 +1,202 @@
+package com.hackorama.cache.policy;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * W-TinyLFU cache policy. New keys enter a small recency window, keys leaving
+ * the window are admitted into the main region only if their estimated access
+ * frequency is higher than the main region's eviction victim, so one hit
+ * wonders and scans do not push out popular keys. The main region is a
+ * segmented recency list, keys read again while on probation are promoted to
+ * the protected segment.
+ *
+ * Frequencies come from a fixed size {@link FrequencySketch} and only cached
+ * keys are tracked, so policy memory is bounded by the cache size. Sized from
+ * the cache by {@link #capacity(long)}, always evicts the least valuable key.
+ */
+public class TinyLfuPolicy extends Policy {
+
+    private static final double WINDOW = 0.01;
+    private static final double PROTECTED = 0.8;
+    // regions in the high bits of saved priorities, estimated frequency in the low bits
+    private static final long REGION_REJECTED = 0;
+    private static final long REGION_PROBATION = 1L << 32;
+    private static final long REGION_PROTECTED = 2L << 32;
+    private static final long REGION_WINDOW = 3L << 32;
+
+    private final FrequencySketch sketch = new FrequencySketch();
+    private final RecencyOrdering window;
+    private final RecencyOrdering probation = new RecencyOrdering();
+    private final RecencyOrdering protect = new RecencyOrdering();
+    private final LinkedHashSet<String> rejected = new LinkedHashSet<>(); // in rejection order
+    private long maximumWindow = 1;
+    private long maximumMain = Long.MAX_VALUE;
+    private long maximumProtected = Long.MAX_VALUE;
+    private long ticks;
+
+    public TinyLfuPolicy() {
+        this(new RecencyOrdering());
+    }
+
+    private TinyLfuPolicy(RecencyOrdering window) {
+        super(window);
+        this.window = window;
+    }
+
+    @Override
+    public Policy capacity(long capacity) {
+        maximumWindow = Math.max(1, (long) (capacity * WINDOW));
+        maximumMain = Math.max(1, capacity - maximumWindow);
+        maximumProtected = (long) (maximumMain * PROTECTED);
+        sketch.resize(capacity);
+        return this;
+    }
+
+    @Override
+    public void clear() {
+        sketch.clear();
+        window.clear();
+        probation.clear();
+        protect.clear();
+        rejected.clear();
+    }
+
+    /**
+     * Returns the key rejected or displaced on the last admission, or else the
+     * least recent key of the probation, protected or window region.
+     */
+    @Override
+    public String evict() {
+        Iterator<String> oldest = rejected.iterator();
+        if (oldest.hasNext()) {
+            String key = oldest.next();
+            oldest.remove();
+            return key;
+        }
+        String key = probation.poll(true);
+        if (key == null) {
+            key = protect.poll(true);
+        }
+        if (key == null) {
+            key = window.poll(true);
+        }
+        return key;
+    }
+
+    /**
+     * Not supported, evicting the most valuable key defeats admission
+     */
+    @Override
+    public Policy most() {
+        throw new UnsupportedOperationException("TinyLFU policy only evicts the least valuable key");
+    }
+
+    /**
+     * Passes the keys of each region with their region and estimated
+     * frequency as the priority, rejected keys first.
+     */
+    @Override
+    public void priorities(ObjLongConsumer<String> consumer) {
+        for (String key : rejected) {
+            consumer.accept(key, REGION_REJECTED | sketch.frequency(key));
+        }
+        probation.forEach((key, tick) -> consumer.accept(key, REGION_PROBATION | sketch.frequency(key)));
+        protect.forEach((key, tick) -> consumer.accept(key, REGION_PROTECTED | sketch.frequency(key)));
+        window.forEach((key, tick) -> consumer.accept(key, REGION_WINDOW | sketch.frequency(key)));
+    }
+
+    /**
+     * Drops the key from its region, the sketch keeps its frequency, which
+     * ages out with the other frequencies.
+     */
+    @Override
+    public void remove(String key) {
+        if (!window.remove(key) && !probation.remove(key) && !protect.remove(key)) {
+            rejected.remove(key);
+        }
+    }
+
+    @Override
+    public void restore(String key, long priority) {
+        for (long i = priority & 0xFFFFFFFFL; i > 0; i--) {
+            sketch.increment(key);
+        }
+        long region = priority & ~0xFFFFFFFFL;
+        if (region == REGION_REJECTED) {
+            rejected.add(key);
+        } else if (region == REGION_PROBATION) {
+            probation.set(key, ticks++);
+        } else if (region == REGION_PROTECTED) {
+            protect.set(key, ticks++);
+        } else {
+            window.set(key, ticks++);
+        }
+    }
+
+    @Override
+    public long size() {
+        return window.size() + probation.size() + protect.size() + rejected.size();
+    }
+
+    @Override
+    public void trackReads(String key, String value) {
+        sketch.increment(key);
+        access(key);
+    }
+
+    @Override
+    public void trackWrites(String key, String value) {
+        sketch.increment(key);
+        if (access(key)) {
+            return;
+        }
+        rejected.remove(key); // added back before it was evicted
+        window.set(key, ticks++);
+        if (window.size() > maximumWindow) {
+            admit(window.poll(true));
+        }
+    }
+
+    /**
+     * Moves the key to the recent end of its region, promoting it from
+     * probation to protected, returns false if the key is not tracked.
+     */
+    private boolean access(String key) {
+        if (window.contains(key)) {
+            window.set(key, ticks++);
+        } else if (protect.contains(key)) {
+            protect.set(key, ticks++);
+        } else if (probation.remove(key)) {
+            protect.set(key, ticks++);
+            if (protect.size() > maximumProtected) {
+                probation.set(protect.poll(true), ticks++);
+            }
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Admits the candidate leaving the window if the main region has room or
+     * if it is accessed more often than the main region victim.
+     */
+    private void admit(String candidate) {
+        if (probation.size() + protect.size() < maximumMain) {
+            probation.set(candidate, ticks++);
+            return;
+        }
+        RecencyOrdering victims = probation.size() > 0 ? probation : protect;
+        String victim = victims.peek(true);
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            victims.remove(victim);
+            rejected.add(victim);
+            probation.set(candidate, ticks++);
+        } else {
+            rejected.add(candidate);
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.hackorama.cache.stats;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of cache statistics, see {@link StatsCounter}. Subtract an
+ * earlier snapshot with {@link #minus(CacheStats)} for the activity in between.
+ */
+public class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long putCount;
+    private final long expirationCount;
+    private final Map<String, Long> evictionCounts;
+    private final long policyUpdateCount;
+    private final long policyNanos;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long loadNanos;
+
+    public CacheStats(long hitCount, long missCount, long putCount, long expirationCount,
+            Map<String, Long> evictionCounts, long policyUpdateCount, long policyNanos, long loadSuccessCount,
+            long loadFailureCount, long loadNanos) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.putCount = putCount;
+        this.expirationCount = expirationCount;
+        this.evictionCounts = Collections.unmodifiableMap(new HashMap<>(evictionCounts));
+        this.policyUpdateCount = policyUpdateCount;
+        this.policyNanos = policyNanos;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.loadNanos = loadNanos;
+    }
+
+    /**
+     * Returns the average nanoseconds spent loading a value, or zero if none
+     * were loaded.
+     */
+    public double averageLoadPenalty() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads == 0 ? 0 : (double) loadNanos / loads;
+    }
+
+    /**
+     * Returns the average nanoseconds of a sampled policy update, or zero if
+     * none were sampled.
+     */
+    public double averagePolicyNanos() {
+        return policyUpdateCount == 0 ? 0 : (double) policyNanos / policyUpdateCount;
+    }
+
+    /**
+     * Returns the number of elements evicted to make room, across all policies.
+     */
+    public long evictionCount() {
+        long count = 0;
+        for (long evictions : evictionCounts.values()) {
+            count += evictions;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of elements evicted to make room, by the name of the
+     * policy that chose them.
+     */
+    public Map<String, Long> evictionCounts() {
+        return evictionCounts;
+    }
+
+    public long expirationCount() {
+        return expirationCount;
+    }
+
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the ratio of reads that found a value, or one if there were no
+     * reads.
+     */
+    public double hitRate() {
+        long requests = requestCount();
+        return requests == 0 ? 1 : (double) hitCount / requests;
+    }
+
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * Returns the statistics for the activity since the earlier snapshot.
+     *
+     * @param earlier an earlier snapshot of the same counter
+     * @return the difference
+     */
+    public CacheStats minus(CacheStats earlier) {
+        Map<String, Long> evictions = new HashMap<>(evictionCounts);
+        for (Map.Entry<String, Long> entry : earlier.evictionCounts.entrySet()) {
+            evictions.merge(entry.getKey(), -entry.getValue(), Long::sum);
+        }
+        return new CacheStats(hitCount - earlier.hitCount, missCount - earlier.missCount,
+                putCount - earlier.putCount, expirationCount - earlier.expirationCount, evictions,
+                policyUpdateCount - earlier.policyUpdateCount, policyNanos - earlier.policyNanos,
+                loadSuccessCount - earlier.loadSuccessCount, loadFailureCount - earlier.loadFailureCount,
+                loadNanos - earlier.loadNanos);
+    }
+
+    public long missCount() {
+        return missCount;
+    }
+
+    public long putCount() {
+        return putCount;
+    }
+
+    public long requestCount() {
+        return hitCount + missCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats [hits=" + hitCount + ", misses=" + missCount + ", puts=" + putCount + ", evictions="
+                + evictionCounts + ", expirations=" + expirationCount + ", averagePolicyNanos="
+                + averagePolicyNanos() + ", loadSuccesses=" + loadSuccessCount + ", loadFailures="
+                + loadFailureCount + ", averageLoadPenalty=" + averageLoadPenalty() + "]";
+    }
+
+}
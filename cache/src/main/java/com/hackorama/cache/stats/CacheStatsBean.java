@@ -0,0 +1,120 @@
+package com.hackorama.cache.stats;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Exposes cache statistics as a JMX MXBean, each attribute read takes a new
+ * snapshot.
+ *
+ * <pre>
+ * CacheStatsBean.register("users", cache::stats);
+ * </pre>
+ */
+public class CacheStatsBean implements CacheStatsMXBean {
+
+    private final Supplier<CacheStats> stats;
+
+    public CacheStatsBean(Supplier<CacheStats> stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Registers the statistics with the platform MBean server under
+     * com.hackorama.cache:type=CacheStats,name=<i>name</i>.
+     *
+     * @param name  the cache name
+     * @param stats the statistics snapshot source, like a cache's stats method
+     * @return the registered object name
+     * @throws IllegalStateException if the name is invalid or already taken
+     */
+    public static ObjectName register(String name, Supplier<CacheStats> stats) {
+        try {
+            ObjectName objectName = objectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new CacheStatsBean(stats), objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register cache stats " + name, e);
+        }
+    }
+
+    /**
+     * Unregisters the statistics of the named cache, if registered.
+     *
+     * @param name the cache name
+     */
+    public static void unregister(String name) {
+        try {
+            ObjectName objectName = objectName(name);
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister cache stats " + name, e);
+        }
+    }
+
+    private static ObjectName objectName(String name) throws JMException {
+        return new ObjectName("com.hackorama.cache:type=CacheStats,name=" + ObjectName.quote(name));
+    }
+
+    @Override
+    public double getAverageLoadPenalty() {
+        return stats.get().averageLoadPenalty();
+    }
+
+    @Override
+    public double getAveragePolicyNanos() {
+        return stats.get().averagePolicyNanos();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return stats.get().evictionCount();
+    }
+
+    @Override
+    public Map<String, Long> getEvictionCounts() {
+        return stats.get().evictionCounts();
+    }
+
+    @Override
+    public long getExpirationCount() {
+        return stats.get().expirationCount();
+    }
+
+    @Override
+    public long getHitCount() {
+        return stats.get().hitCount();
+    }
+
+    @Override
+    public double getHitRate() {
+        return stats.get().hitRate();
+    }
+
+    @Override
+    public long getLoadFailureCount() {
+        return stats.get().loadFailureCount();
+    }
+
+    @Override
+    public long getLoadSuccessCount() {
+        return stats.get().loadSuccessCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return stats.get().missCount();
+    }
+
+    @Override
+    public long getPutCount() {
+        return stats.get().putCount();
+    }
+
+}
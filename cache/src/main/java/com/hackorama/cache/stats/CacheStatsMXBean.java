@@ -0,0 +1,32 @@
+package com.hackorama.cache.stats;
+
+import java.util.Map;
+
+/**
+ * JMX view of the statistics of a cache, see {@link CacheStatsBean}.
+ */
+public interface CacheStatsMXBean {
+
+    public double getAverageLoadPenalty();
+
+    public double getAveragePolicyNanos();
+
+    public long getEvictionCount();
+
+    public Map<String, Long> getEvictionCounts();
+
+    public long getExpirationCount();
+
+    public long getHitCount();
+
+    public double getHitRate();
+
+    public long getLoadFailureCount();
+
+    public long getLoadSuccessCount();
+
+    public long getMissCount();
+
+    public long getPutCount();
+
+}
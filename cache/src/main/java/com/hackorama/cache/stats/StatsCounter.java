@@ -0,0 +1,91 @@
+package com.hackorama.cache.stats;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe cache statistics counters, backed by {@link LongAdder} so that
+ * threads recording at the same time do not contend. One counter can be shared
+ * by several caches, like the segments of a concurrent cache.
+ */
+public class StatsCounter {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder puts = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> evictions = new ConcurrentHashMap<>();
+    private final LongAdder policyUpdates = new LongAdder();
+    private final LongAdder policyNanos = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    public void recordEviction(String policy) {
+        LongAdder count = evictions.get(policy);
+        if (count == null) {
+            count = evictions.computeIfAbsent(policy, name -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    public void recordExpiration() {
+        expirations.increment();
+    }
+
+    public void recordHits(int count) {
+        hits.add(count);
+    }
+
+    public void recordLoadFailure(long nanos) {
+        loadFailures.increment();
+        loadNanos.add(nanos);
+    }
+
+    public void recordLoadSuccess(long nanos) {
+        loadSuccesses.increment();
+        loadNanos.add(nanos);
+    }
+
+    public void recordMisses(int count) {
+        misses.add(count);
+    }
+
+    /**
+     * Records the time taken by a policy update, callers may time only a
+     * sample of the updates since the average is what is reported.
+     */
+    public void recordPolicyUpdate(long nanos) {
+        policyUpdates.increment();
+        policyNanos.add(nanos);
+    }
+
+    /**
+     * Records the time taken by a batch of policy updates.
+     */
+    public void recordPolicyUpdates(int count, long nanos) {
+        policyUpdates.add(count);
+        policyNanos.add(nanos);
+    }
+
+    public void recordPut() {
+        puts.increment();
+    }
+
+    /**
+     * Returns the counts so far, the counts are read one after the other while
+     * recording goes on so they may be off by the operations in between.
+     */
+    public CacheStats snapshot() {
+        Map<String, Long> evictionCounts = new HashMap<>();
+        for (Map.Entry<String, LongAdder> entry : evictions.entrySet()) {
+            evictionCounts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return new CacheStats(hits.sum(), misses.sum(), puts.sum(), expirations.sum(), evictionCounts,
+                policyUpdates.sum(), policyNanos.sum(), loadSuccesses.sum(), loadFailures.sum(), loadNanos.sum());
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AsyncCacheTest {
+
+    /**
+     * Executor running its tasks only when asked to.
+     */
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        private void run() {
+            List<Runnable> run = new ArrayList<>(tasks);
+            tasks.clear();
+            run.forEach(Runnable::run);
+        }
+
+        private void runReversed() {
+            List<Runnable> run = new ArrayList<>(tasks);
+            tasks.clear();
+            Collections.reverse(run);
+            run.forEach(Runnable::run);
+        }
+    }
+
+    @Test
+    public void testPutIsVisibleBeforeCached() {
+        ManualExecutor executor = new ManualExecutor();
+        Cache cache = new ConcurrentDataCache().size(64);
+        AsyncCache asyncCache = new AsyncDataCache(cache).executor(executor);
+        assertNull(asyncCache.getAsync("1").join());
+        CompletableFuture<Void> put = asyncCache.putAsync("1", "ONE");
+        assertEquals("ONE", asyncCache.getAsync("1").join());
+        assertNull("Check cache is updated on the executor", cache.get("1"));
+        assertFalse(put.isDone());
+        executor.run();
+        assertTrue(put.isDone());
+        assertEquals("ONE", cache.get("1"));
+        asyncCache.removeAsync("1");
+        assertNull(asyncCache.getAsync("1").join());
+        executor.run();
+        assertNull(cache.get("1"));
+    }
+
+    @Test
+    public void testChangesAppliedInOrder() {
+        ManualExecutor executor = new ManualExecutor();
+        Cache cache = new ConcurrentDataCache().size(64);
+        AsyncCache asyncCache = new AsyncDataCache(cache).executor(executor);
+        asyncCache.putAsync("1", "ONE");
+        asyncCache.putAsync("1", "NEW ONE");
+        executor.runReversed();
+        assertEquals("Check replaced change is dropped", "NEW ONE", cache.get("1"));
+        assertEquals("NEW ONE", asyncCache.getAsync("1").join());
+    }
+
+    @Test
+    public void testConcurrentLoadsShareFuture() {
+        ManualExecutor executor = new ManualExecutor();
+        Cache cache = new ConcurrentDataCache().size(64);
+        AsyncCache asyncCache = new AsyncDataCache(cache).executor(executor);
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        CompletableFuture<String> first = asyncCache.computeIfAbsentAsync("1", key -> {
+            loads.incrementAndGet();
+            return loading;
+        });
+        CompletableFuture<String> second = asyncCache.computeIfAbsentAsync("1", key -> {
+            loads.incrementAndGet();
+            return loading;
+        });
+        assertSame(first, second);
+        assertSame(first, asyncCache.getAsync("1"));
+        loading.complete("VALUE 1");
+        assertFalse("Check load completes once cached", first.isDone());
+        executor.run();
+        assertEquals("VALUE 1", first.join());
+        assertEquals("VALUE 1", cache.get("1"));
+        assertEquals("VALUE 1", asyncCache.computeIfAbsentAsync("1", key -> {
+            loads.incrementAndGet();
+            return loading;
+        }).join());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testPutWinsOverLoadInFlight() {
+        ManualExecutor executor = new ManualExecutor();
+        Cache cache = new ConcurrentDataCache().size(64);
+        AsyncCache asyncCache = new AsyncDataCache(cache).executor(executor);
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        CompletableFuture<String> load = asyncCache.computeIfAbsentAsync("1", key -> loading);
+        asyncCache.putAsync("1", "PUT ONE");
+        loading.complete("LOADED ONE");
+        executor.run();
+        assertEquals("LOADED ONE", load.join());
+        assertEquals("PUT ONE", cache.get("1"));
+    }
+
+    @Test
+    public void testLoadAfterRemoveInFlight() {
+        ManualExecutor executor = new ManualExecutor();
+        Cache cache = new ConcurrentDataCache().size(64);
+        AsyncCache asyncCache = new AsyncDataCache(cache).executor(executor);
+        asyncCache.putAsync("1", "ONE");
+        asyncCache.putAsync("2", "TWO");
+        executor.run();
+        asyncCache.removeAsync("1");
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> load = asyncCache.computeIfAbsentAsync("1", key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("LOADED ONE");
+        });
+        assertEquals("Check remove in flight is not taken for a load", 1, loads.get());
+        executor.run();
+        assertEquals("LOADED ONE", load.join());
+        assertEquals("LOADED ONE", cache.get("1"));
+        asyncCache.removeAsync("2");
+        CompletableFuture<String> failed = asyncCache.computeIfAbsentAsync("2", key -> {
+            CompletableFuture<String> loading = new CompletableFuture<>();
+            loading.completeExceptionally(new IllegalStateException("Store down"));
+            return loading;
+        });
+        executor.run();
+        assertTrue(failed.isCompletedExceptionally());
+        assertNull("Check remove replaced by a failed load still applies", cache.get("2"));
+        assertNull(asyncCache.getAsync("2").join());
+    }
+
+    @Test
+    public void testFailedLoadIsNotCached() {
+        ManualExecutor executor = new ManualExecutor();
+        Cache cache = new ConcurrentDataCache().size(64);
+        AsyncCache asyncCache = new AsyncDataCache(cache).executor(executor);
+        CompletableFuture<String> loading = new CompletableFuture<>();
+        CompletableFuture<String> load = asyncCache.computeIfAbsentAsync("1", key -> loading);
+        loading.completeExceptionally(new IllegalStateException("Store down"));
+        executor.run();
+        try {
+            load.join();
+            fail("Expected load failure");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertNull(asyncCache.getAsync("1").join());
+        CompletableFuture<String> retry = asyncCache.computeIfAbsentAsync("1",
+                key -> CompletableFuture.completedFuture("VALUE 1"));
+        executor.run();
+        assertEquals("Check failed load is retried", "VALUE 1", retry.join());
+        assertEquals("VALUE 1", cache.get("1"));
+    }
+
+    @Test
+    public void testSynchronousView() {
+        Cache cache = new AsyncDataCache(new ConcurrentDataCache().size(3)).synchronous();
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        assertEquals("ONE", cache.get("1"));
+        cache.remove("1");
+        assertNull(cache.get("1"));
+        cache.put("3", "THREE");
+        cache.put("4", "FOUR");
+        cache.put("5", "FIVE");
+        assertEquals(3, cache.getAll(Arrays.asList("1", "2", "3", "4", "5")).size());
+        cache.clear();
+        assertNull(cache.get("5"));
+    }
+
+}
@@ -0,0 +1,120 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.hackorama.cache.policy.Policy;
+import com.hackorama.cache.policy.RecentAccessPolicy;
+import com.hackorama.cache.policy.RecentAddPolicy;
+import com.hackorama.cache.stats.StatsCounter;
+
+public class BulkTest {
+
+    @Test
+    public void testCacheBulkOperations() {
+        testBulkOperations(new DataCache().size(64));
+        testBulkOperations(new ConcurrentDataCache().size(64));
+    }
+
+    @Test
+    public void testCacheBulkReadsAreTrackedInKeyOrder() {
+        DataCache cache = new DataCache().size(3).with(new RecentAccessPolicy()).recordStats();
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        cache.getAll(Arrays.asList("3", "1", "2", "4")); // 3 is now the least recent
+        cache.put("5", "FIVE");
+        assertEquals(null, cache.get("3"));
+        assertEquals("ONE", cache.get("1"));
+        assertEquals(4, cache.stats().hitCount());
+        assertEquals(2, cache.stats().missCount());
+    }
+
+    @Test
+    public void testCacheBulkWritesEvictDownToSize() {
+        Cache cache = new DataCache().size(3).with(new RecentAddPolicy());
+        cache.put("1", "ONE");
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("2", "TWO");
+        entries.put("3", "THREE");
+        entries.put("4", "FOUR");
+        entries.put("5", "FIVE");
+        cache.putAll(entries);
+        assertEquals("Verify the oldest elements are evicted", null, cache.get("1"));
+        assertEquals(null, cache.get("2"));
+        assertEquals("THREE", cache.get("3"));
+        assertEquals("FOUR", cache.get("4"));
+        assertEquals("FIVE", cache.get("5"));
+    }
+
+    @Test
+    public void testPolicyBatchKeepsIterationOrder() {
+        Policy policy = new RecentAccessPolicy();
+        Map<String, String> reads = new LinkedHashMap<>();
+        reads.put("2", "");
+        reads.put("1", "");
+        reads.put("3", "");
+        policy.trackReads(reads);
+        assertEquals("2", policy.evict());
+        assertEquals("1", policy.evict());
+        assertEquals("3", policy.evict());
+    }
+
+    @Test
+    public void testLoadingCacheBulkLoadsMissingKeysAtOnce() {
+        AtomicInteger loads = new AtomicInteger();
+        StatsCounter stats = new StatsCounter();
+        LoadingCache cache = new LoadingCache(new DataCache().size(64), key -> {
+            throw new AssertionError("Single key loader used for " + key);
+        }).bulkLoader((Set<String> keys) -> {
+            loads.incrementAndGet();
+            Map<String, String> values = new HashMap<>();
+            for (String key : keys) {
+                if (!key.equals("INVALID")) {
+                    values.put(key, "VALUE " + key);
+                }
+            }
+            return values;
+        }).recordStats(stats);
+        cache.put("1", "ONE");
+        Map<String, String> values = cache.getAll(Arrays.asList("1", "2", "3", "INVALID"));
+        assertEquals(3, values.size());
+        assertEquals("ONE", values.get("1"));
+        assertEquals("VALUE 2", values.get("2"));
+        assertEquals("VALUE 3", values.get("3"));
+        assertEquals("Verify missing keys are loaded in one call", 1, loads.get());
+        assertEquals("VALUE 3", cache.get("3"));
+        assertEquals(1, stats.snapshot().loadSuccessCount());
+    }
+
+    @Test
+    public void testLoadingCacheBulkFallsBackToLoader() {
+        Cache cache = new LoadingCache(new DataCache().size(64), key -> "VALUE " + key);
+        Map<String, String> values = cache.getAll(Arrays.asList("1", "2"));
+        assertEquals("VALUE 1", values.get("1"));
+        assertEquals("VALUE 2", values.get("2"));
+    }
+
+    private void testBulkOperations(Cache cache) {
+        Map<String, String> entries = new HashMap<>();
+        for (int i = 0; i < 32; i++) {
+            entries.put(String.valueOf(i), "VALUE " + i);
+        }
+        cache.putAll(entries);
+        assertEquals(entries, cache.getAll(entries.keySet()));
+        assertEquals("VALUE 7", cache.get("7"));
+        cache.removeAll(Arrays.asList("1", "2", "3"));
+        Map<String, String> values = cache.getAll(Arrays.asList("1", "2", "3", "4", "99"));
+        assertEquals("Verify removed and missing keys are left out", 1, values.size());
+        assertEquals("VALUE 4", values.get("4"));
+    }
+
+}
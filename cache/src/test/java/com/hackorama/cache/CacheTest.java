@@ -2,12 +2,21 @@ package com.hackorama.cache;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
 import org.junit.Test;
 
+import com.hackorama.cache.policy.ArcPolicy;
+import com.hackorama.cache.policy.Policy;
 import com.hackorama.cache.policy.RecentAddPolicy;
 import com.hackorama.cache.policy.FrequencyPolicy;
 import com.hackorama.cache.policy.RecentAccessPolicy;
 import com.hackorama.cache.policy.SizePolicy;
+import com.hackorama.cache.policy.TinyLfuPolicy;
 
 public class CacheTest {
 
@@ -51,6 +60,25 @@ public class CacheTest {
         assertEquals("FIVE", cache.get("5"));
     }
 
+    @Test
+    public void testCacheEvictsWhenPolicyHasNotTrackedAnyKey() {
+        Cache cache = new DataCache().size(2).with(new FrequencyPolicy());
+        cache.put("1", "ONE"); // frequency policy does not track writes
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        assertEquals("THREE", cache.get("3"));
+    }
+
+    @Test
+    public void testCacheReplacingElementDoesNotEvict() {
+        Cache cache = new DataCache().size(2).with(new RecentAddPolicy());
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("1", "UNO");
+        assertEquals("UNO", cache.get("1"));
+        assertEquals("Check replacing an element keeps the others", "TWO", cache.get("2"));
+    }
+
     @Test
     public void testCacheWithDefaultFrequencyPolicy() {
         // All three cache initialization modes uses the default least frequent policy
@@ -71,6 +99,24 @@ public class CacheTest {
         testLeastRecentAccess(new DataCache().size(3).with(new RecentAccessPolicy()));
     }
 
+    @Test
+    public void testCacheWithTinyLfuPolicyResistsScans() {
+        Cache cache = new DataCache().size(3).with(new TinyLfuPolicy());
+        for (String key : new String[] { "1", "2", "3" }) {
+            cache.put(key, key);
+            for (int i = 0; i < 5; i++) {
+                assertEquals(key, cache.get(key));
+            }
+        }
+        for (int i = 100; i < 200; i++) { // one hit wonders
+            cache.put(String.valueOf(i), String.valueOf(i));
+        }
+        assertEquals("Check frequent element survives the scan", "1", cache.get("1"));
+        assertEquals("Check frequent element survives the scan", "2", cache.get("2"));
+        assertEquals("Check the latest element is in the window", "199", cache.get("199"));
+        assertEquals("Check scanned element is not admitted", null, cache.get("150"));
+    }
+
     @Test
     public void testCacheWithMaxSizePolicy() {
         testMostSize(new DataCache().size(3).with(new SizePolicy().most()));
@@ -87,6 +133,81 @@ public class CacheTest {
         testMostRecentAccess(new DataCache().size(3).with(new RecentAccessPolicy().most()));
     }
 
+    @Test
+    public void testRemovedAndExpiredKeysLeaveNoPolicyMetadata() {
+        AtomicLong time = new AtomicLong();
+        Policy policy = new FrequencyPolicy();
+        Cache cache = new DataCache().size(100).with(policy).ticker(time::get);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put("KEY " + i, "VALUE");
+            cache.get("KEY " + i);
+            cache.remove("KEY " + i);
+        }
+        assertEquals("Check removed keys are not tracked", 0, policy.size());
+        for (int i = 0; i < 10_000; i++) {
+            cache.put("KEY " + i, "VALUE", 1, TimeUnit.SECONDS);
+            cache.get("KEY " + i);
+            time.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        }
+        cache.get("KEY 0");
+        assertTrue("Check expired keys are not tracked", policy.size() <= 100);
+    }
+
+    @Test
+    public void testGhostPolicyMetadataIsBounded() {
+        Policy policy = new FrequencyPolicy();
+        Cache cache = new DataCache().size(10).with(policy);
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(cache.get("MISSING " + i));
+        }
+        assertEquals("Check ghosts bounded by the cache size", 10, policy.size());
+        Policy eager = new RecentAccessPolicy();
+        Cache eagerCache = new DataCache().size(10).with(eager).maximumGhosts(0);
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(eagerCache.get("MISSING " + i));
+        }
+        assertEquals("Check ghosts dropped on each miss", 0, eager.size());
+    }
+
+    @Test
+    public void testGhostKeptForKeyMissedRepeatedly() {
+        Policy policy = new FrequencyPolicy();
+        Cache cache = new DataCache().size(4).with(policy);
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.get("HOT"));
+        }
+        assertEquals("Check a key missed often is one ghost and keeps its metadata", 1, policy.size());
+        for (int i = 0; i < 3; i++) {
+            assertNull(cache.get("MISSING " + i));
+            assertNull(cache.get("HOT"));
+        }
+        assertNull(cache.get("MISSING 3"));
+        assertNull(cache.get("MISSING 4"));
+        assertEquals(4, policy.size());
+        assertNull(cache.get("HOT"));
+        assertEquals("Check the least recently missed ghost is dropped, not the hot key", 4, policy.size());
+    }
+
+    @Test
+    public void testPolicyMetadataIsBoundedUnderChurn() {
+        List<Supplier<Policy>> policies = Arrays.asList(FrequencyPolicy::new, RecentAccessPolicy::new,
+                RecentAddPolicy::new, SizePolicy::new, TinyLfuPolicy::new, ArcPolicy::new);
+        for (Supplier<Policy> supplier : policies) {
+            Policy policy = supplier.get();
+            Cache cache = new DataCache().size(64).with(policy);
+            for (int i = 0; i < 100_000; i++) {
+                String key = "KEY " + i;
+                cache.get(key);
+                cache.put(key, "VALUE " + i);
+                cache.get("KEY " + (i / 2));
+                if (i % 3 == 0) {
+                    cache.remove("KEY " + (i - 10));
+                }
+            }
+            assertTrue(policy.getClass().getSimpleName() + " tracks " + policy.size(), policy.size() <= 3 * 64);
+        }
+    }
+
     private void testLeastFrequency(Cache cache) {
         cache.put("2", "TWO");
         cache.put("1", "ONE");
@@ -0,0 +1,171 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.hackorama.cache.policy.RecentAccessPolicy;
+import com.hackorama.cache.stats.StatsCounter;
+
+public class ComputeTest {
+
+    /**
+     * Recent access policy counting its updates.
+     */
+    private static class CountingPolicy extends RecentAccessPolicy {
+        private int reads;
+        private int writes;
+
+        @Override
+        public void trackReads(String key, String value) {
+            reads++;
+            super.trackReads(key, value);
+        }
+
+        @Override
+        public void trackWrites(String key, String value) {
+            writes++;
+            super.trackWrites(key, value);
+        }
+    }
+
+    @Test
+    public void testCacheComputeOperations() {
+        testComputeOperations(new DataCache().size(64));
+        testComputeOperations(new ConcurrentDataCache().size(64));
+        testComputeOperations(new LoadingCache(new DataCache().size(64), key -> "LOADED"));
+        testComputeOperations(new AsyncDataCache(new ConcurrentDataCache().size(64)).synchronous());
+    }
+
+    @Test
+    public void testComputeUpdatesPolicyOnce() {
+        CountingPolicy policy = new CountingPolicy();
+        DataCache cache = new DataCache().size(64).with(policy);
+        cache.merge("1", "1", ComputeTest::add);
+        cache.merge("1", "1", ComputeTest::add);
+        cache.compute("1", (key, value) -> add(value, "1"));
+        assertEquals("3", cache.computeIfAbsent("1", key -> "0"));
+        assertEquals("Check each change is one write", 3, policy.writes);
+        assertEquals("Check a hit is one read", 1, policy.reads);
+        cache.computeIfPresent("1", (key, value) -> value);
+        assertEquals("Check an unchanged value is a read", 2, policy.reads);
+        assertEquals(3, policy.writes);
+    }
+
+    @Test
+    public void testComputeIfAbsentHitIsTrackedAsRead() {
+        DataCache cache = new DataCache().size(3).with(new RecentAccessPolicy()).recordStats();
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        cache.getAll(Arrays.asList("1", "2", "3"));
+        assertEquals("ONE", cache.computeIfAbsent("1", key -> "NEW ONE")); // 2 is now the least recent
+        assertEquals("FOUR", cache.computeIfAbsent("4", key -> "FOUR"));
+        assertEquals(null, cache.get("2"));
+        assertEquals("ONE", cache.get("1"));
+        assertEquals(5, cache.stats().hitCount());
+        assertEquals(2, cache.stats().missCount());
+    }
+
+    @Test
+    public void testComputeSkipsExpiredValues() {
+        AtomicLong time = new AtomicLong();
+        Cache cache = new DataCache().size(64).ticker(time::get).expireAfterWrite(10, TimeUnit.SECONDS);
+        cache.put("1", "ONE");
+        time.set(TimeUnit.SECONDS.toNanos(11));
+        assertNull(cache.computeIfPresent("1", (key, value) -> "NEW " + value));
+        assertEquals("1", cache.merge("1", "1", ComputeTest::add));
+        time.set(TimeUnit.SECONDS.toNanos(15));
+        assertEquals("2", cache.merge("1", "1", ComputeTest::add));
+        time.set(TimeUnit.SECONDS.toNanos(24));
+        assertEquals("Check a change starts a new time to live", "2", cache.get("1"));
+    }
+
+    @Test
+    public void testComputeWritesThrough() {
+        List<String> writes = new ArrayList<>();
+        Cache cache = new DataCache().size(64).writeThrough(new CacheWriter() {
+            @Override
+            public void write(String key, String value) {
+                writes.add(key + "=" + value);
+            }
+
+            @Override
+            public void delete(String key) {
+                writes.add(key);
+            }
+        });
+        cache.merge("1", "1", ComputeTest::add);
+        cache.computeIfAbsent("1", key -> "0");
+        cache.computeIfPresent("1", (key, value) -> null);
+        assertEquals("[1=1, 1]", writes.toString());
+    }
+
+    @Test
+    public void testConcurrentMergeIsAtomic() throws InterruptedException {
+        Cache cache = new ConcurrentDataCache().segments(4).size(64);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    cache.merge(String.valueOf(i % 4), "1", ComputeTest::add);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Verify no increment is lost", "2000", cache.get(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void testLoadingCacheComputeDoesNotLoad() {
+        AtomicInteger loads = new AtomicInteger();
+        StatsCounter stats = new StatsCounter();
+        Cache cache = new LoadingCache(new DataCache().size(64), key -> {
+            loads.incrementAndGet();
+            return "LOADED";
+        }).recordStats(stats);
+        assertEquals("COMPUTED", cache.computeIfAbsent("1", key -> "COMPUTED"));
+        assertNull(cache.computeIfPresent("2", (key, value) -> "NEW " + value));
+        assertEquals("1", cache.merge("3", "1", ComputeTest::add));
+        assertEquals(0, loads.get());
+        assertEquals(0, stats.snapshot().loadSuccessCount());
+    }
+
+    private static String add(String value, String increment) {
+        return String.valueOf(Long.parseLong(value) + Long.parseLong(increment));
+    }
+
+    private void testComputeOperations(Cache cache) {
+        assertEquals("ONE", cache.computeIfAbsent("1", key -> "ONE"));
+        assertEquals("ONE", cache.computeIfAbsent("1", key -> "NEW ONE"));
+        assertNull(cache.computeIfAbsent("2", key -> null));
+        assertNull(cache.computeIfPresent("2", (key, value) -> "TWO"));
+        assertEquals("ONE ONE", cache.computeIfPresent("1", (key, value) -> value + " " + value));
+        assertEquals("ONE ONE", cache.get("1"));
+        assertEquals("3:null", cache.compute("3", (key, value) -> key + ":" + value));
+        assertEquals("3:3:null", cache.compute("3", (key, value) -> key + ":" + value));
+        assertNull(cache.compute("3", (key, value) -> null));
+        assertNull(cache.computeIfPresent("3", (key, value) -> value));
+        assertEquals("1", cache.merge("4", "1", ComputeTest::add));
+        assertEquals("5", cache.merge("4", "4", ComputeTest::add));
+        assertNull(cache.merge("4", "1", (value, increment) -> null));
+        assertNull(cache.computeIfPresent("4", (key, value) -> value));
+        assertNull(cache.computeIfPresent("1", (key, value) -> null));
+        assertNull(cache.computeIfPresent("1", (key, value) -> value));
+    }
+
+}
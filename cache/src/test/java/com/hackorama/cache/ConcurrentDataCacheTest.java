@@ -0,0 +1,80 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.hackorama.cache.policy.RecentAddPolicy;
+
+public class ConcurrentDataCacheTest {
+
+    @Test
+    public void testCacheBasicOperations() {
+        Cache cache = new ConcurrentDataCache().size(64);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        assertEquals("ONE", cache.get("1"));
+        assertEquals("TWO", cache.get("2"));
+        cache.remove("1");
+        assertEquals("Verify removed element", null, cache.get("1"));
+        cache.clear();
+        assertEquals("Verify clear removed all elements", null, cache.get("2"));
+    }
+
+    @Test
+    public void testCacheEvictsWithinSize() {
+        Cache cache = new ConcurrentDataCache().size(64).segments(4).with(RecentAddPolicy::new);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(String.valueOf(i), String.valueOf(i));
+        }
+        int cached = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get(String.valueOf(i)) != null) {
+                cached++;
+            }
+        }
+        assertTrue("Verify cache holds no more than its size", cached <= 64);
+        assertNotNull("Verify most recently added element is cached", cache.get("999"));
+    }
+
+    @Test
+    public void testCacheSegmentsAreLimitedBySize() {
+        Cache cache = new ConcurrentDataCache().segments(64).size(3).with(RecentAddPolicy::new);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        cache.put("4", "FOUR");
+        assertEquals("FOUR", cache.get("4"));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws InterruptedException {
+        Cache cache = new ConcurrentDataCache().size(16 * 1000).with(RecentAddPolicy::new);
+        AtomicInteger failures = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    String key = thread + ":" + i;
+                    cache.put(key, key);
+                    if (!key.equals(cache.get(key))) {
+                        failures.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("Verify every thread reads its own writes", 0, failures.get());
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.hackorama.cache.policy.RecentAddPolicy;
+
+public class ExpiryTest {
+
+    private final AtomicLong time = new AtomicLong();
+
+    @Test
+    public void testCacheExpiresAfterAccess() {
+        Cache cache = new DataCache().size(3).ticker(time::get).expireAfterAccess(10, TimeUnit.SECONDS);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        advance(6, TimeUnit.SECONDS);
+        assertEquals("ONE", cache.get("1")); // keeps 1 alive
+        advance(6, TimeUnit.SECONDS);
+        assertEquals("ONE", cache.get("1"));
+        assertEquals("Check element not accessed is expired", null, cache.get("2"));
+    }
+
+    @Test
+    public void testCacheExpiresAfterWrite() {
+        Cache cache = new DataCache().size(3).ticker(time::get).expireAfterWrite(10, TimeUnit.SECONDS);
+        cache.put("1", "ONE");
+        advance(5, TimeUnit.SECONDS);
+        cache.put("2", "TWO");
+        assertEquals("ONE", cache.get("1"));
+        advance(6, TimeUnit.SECONDS);
+        assertEquals("Check element is expired after its time to live", null, cache.get("1"));
+        assertEquals("TWO", cache.get("2"));
+        advance(5, TimeUnit.SECONDS);
+        assertEquals("Check element is expired after its time to live", null, cache.get("2"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCacheWithoutExpiryRejectsTimeToLive() {
+        Cache cache = new Cache() { // an implementation written before expiry
+            private final Map<String, String> map = new HashMap<>();
+
+            @Override
+            public void clear() {
+                map.clear();
+            }
+
+            @Override
+            public String get(String key) {
+                return map.get(key);
+            }
+
+            @Override
+            public void put(String key, String value) {
+                map.put(key, value);
+            }
+
+            @Override
+            public void remove(String key) {
+                map.remove(key);
+            }
+        };
+        cache.put("1", "ONE", 10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPeekDoesNotKeepAliveOrReturnExpired() {
+        Cache cache = new DataCache().size(3).ticker(time::get).expireAfterAccess(10, TimeUnit.SECONDS);
+        cache.put("1", "ONE");
+        advance(6, TimeUnit.SECONDS);
+        assertEquals("ONE", cache.peek("1"));
+        advance(6, TimeUnit.SECONDS);
+        assertEquals("Check peek did not keep the element alive", null, cache.peek("1"));
+        assertEquals(null, cache.get("1"));
+    }
+
+    @Test
+    public void testCacheExpiresPerElement() {
+        Cache cache = new DataCache().size(3).ticker(time::get);
+        cache.put("1", "ONE", 1, TimeUnit.MINUTES);
+        cache.put("2", "TWO", 1, TimeUnit.HOURS);
+        cache.put("3", "THREE");
+        advance(2, TimeUnit.MINUTES);
+        assertEquals("Check element is expired after its time to live", null, cache.get("1"));
+        assertEquals("TWO", cache.get("2"));
+        advance(2, TimeUnit.HOURS);
+        assertEquals("Check element is expired after its time to live", null, cache.get("2"));
+        assertEquals("Check element without time to live never expires", "THREE", cache.get("3"));
+    }
+
+    @Test
+    public void testCacheReplacingElementResetsTimeToLive() {
+        Cache cache = new DataCache().size(3).ticker(time::get).expireAfterWrite(10, TimeUnit.SECONDS);
+        cache.put("1", "ONE");
+        advance(8, TimeUnit.SECONDS);
+        cache.put("1", "ONE AGAIN");
+        advance(8, TimeUnit.SECONDS);
+        assertEquals("ONE AGAIN", cache.get("1"));
+    }
+
+    @Test
+    public void testExpiredElementsFreeCacheSpace() {
+        Cache cache = new DataCache().size(2).ticker(time::get).with(new RecentAddPolicy());
+        cache.put("1", "ONE", 1, TimeUnit.SECONDS);
+        cache.put("2", "TWO");
+        advance(2, TimeUnit.SECONDS);
+        cache.put("3", "THREE");
+        assertEquals("Check element is not evicted when an expired element made room", "TWO", cache.get("2"));
+        assertEquals("THREE", cache.get("3"));
+    }
+
+    @Test
+    public void testConcurrentCacheExpires() {
+        Cache cache = new ConcurrentDataCache().size(64).ticker(time::get).expireAfterWrite(1, TimeUnit.MINUTES);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO", 1, TimeUnit.HOURS);
+        advance(2, TimeUnit.MINUTES);
+        assertEquals("Check element is expired after its time to live", null, cache.get("1"));
+        assertEquals("TWO", cache.get("2"));
+    }
+
+    @Test
+    public void testTimerWheelFiresDueTimers() {
+        TimerWheel wheel = new TimerWheel(0);
+        StringBuilder fired = new StringBuilder();
+        wheel.schedule("second", TimeUnit.SECONDS.toNanos(1), Long.MAX_VALUE);
+        wheel.schedule("minute", TimeUnit.MINUTES.toNanos(1), Long.MAX_VALUE);
+        wheel.schedule("day", TimeUnit.DAYS.toNanos(1), Long.MAX_VALUE);
+        wheel.schedule("year", TimeUnit.DAYS.toNanos(365), Long.MAX_VALUE);
+        wheel.advance(TimeUnit.SECONDS.toNanos(3), fired::append);
+        assertEquals("second", fired.toString());
+        wheel.advance(TimeUnit.MINUTES.toNanos(3), fired::append);
+        assertEquals("secondminute", fired.toString());
+        wheel.advance(TimeUnit.DAYS.toNanos(3), fired::append);
+        assertEquals("secondminuteday", fired.toString());
+        assertFalse(wheel.expired("year", TimeUnit.DAYS.toNanos(3)));
+        wheel.advance(TimeUnit.DAYS.toNanos(400), fired::append);
+        assertEquals("secondminutedayyear", fired.toString());
+    }
+
+    @Test
+    public void testTimerWheelCascadesToExactTime() {
+        TimerWheel wheel = new TimerWheel(0);
+        StringBuilder fired = new StringBuilder();
+        long time = TimeUnit.MINUTES.toNanos(90);
+        wheel.schedule("timer", time, Long.MAX_VALUE);
+        for (long now = 0; now < time - TimeUnit.SECONDS.toNanos(2); now += TimeUnit.MILLISECONDS.toNanos(500)) {
+            wheel.advance(now, fired::append);
+        }
+        assertEquals("Check timer does not fire early", "", fired.toString());
+        wheel.advance(time + TimeUnit.SECONDS.toNanos(2), fired::append);
+        assertEquals("timer", fired.toString());
+    }
+
+    private void advance(long duration, TimeUnit unit) {
+        time.addAndGet(unit.toNanos(duration));
+    }
+
+}
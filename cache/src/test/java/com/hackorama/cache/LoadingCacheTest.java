@@ -0,0 +1,147 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.hackorama.cache.stats.StatsCounter;
+
+public class LoadingCacheTest {
+
+    @Test
+    public void testCacheLoadsMissingValues() {
+        AtomicInteger loads = new AtomicInteger();
+        Cache cache = new LoadingCache(new DataCache().size(3), key -> {
+            loads.incrementAndGet();
+            return key.equals("INVALID") ? null : "VALUE " + key;
+        });
+        assertEquals("VALUE 1", cache.get("1"));
+        assertEquals("VALUE 1", cache.get("1"));
+        assertEquals("Check cached value is not loaded again", 1, loads.get());
+        assertEquals(null, cache.get("INVALID"));
+        assertEquals(null, cache.get("INVALID"));
+        assertEquals("Check missing value is not cached", 3, loads.get());
+    }
+
+    @Test
+    public void testCacheCoalescesConcurrentLoads() throws InterruptedException {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        Cache cache = new LoadingCache(new ConcurrentDataCache().size(64), key -> {
+            loads.incrementAndGet();
+            try {
+                loading.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "VALUE " + key;
+        });
+        AtomicInteger results = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                if ("VALUE 1".equals(cache.get("1"))) {
+                    results.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(100); // let every thread miss
+        loading.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("Check every thread got the value", 8, results.get());
+        assertEquals("Check concurrent misses share one load", 1, loads.get());
+    }
+
+    @Test
+    public void testCacheLoadFailureIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        StatsCounter stats = new StatsCounter();
+        Cache cache = new LoadingCache(new DataCache().size(3), key -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("Backend down");
+            }
+            return "VALUE " + key;
+        }).recordStats(stats);
+        try {
+            cache.get("1");
+            fail("Expected load failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Backend down", e.getMessage());
+        }
+        assertEquals("VALUE 1", cache.get("1"));
+        assertEquals(1, stats.snapshot().loadFailureCount());
+        assertEquals(1, stats.snapshot().loadSuccessCount());
+    }
+
+    @Test
+    public void testCacheMissLooksUpOnce() {
+        DataCache data = new DataCache().size(3).recordStats();
+        Cache cache = new LoadingCache(data, key -> "VALUE " + key);
+        assertEquals("VALUE 1", cache.get("1"));
+        assertEquals("Check a loaded miss is counted once", 1, data.stats().missCount());
+        assertEquals("VALUE 1", cache.get("1"));
+        assertEquals(1, data.stats().hitCount());
+    }
+
+    @Test
+    public void testCacheDoesNotReloadValueLoadedSinceMiss() {
+        AtomicInteger loads = new AtomicInteger();
+        DataCache data = new DataCache() {
+            @Override
+            public String get(String key) {
+                String value = super.get(key);
+                if (value == null) {
+                    super.put(key, "LOADED BY ANOTHER " + key); // another thread finishes its load right after the miss
+                }
+                return value;
+            }
+        }.size(3).recordStats();
+        Cache cache = new LoadingCache(data, key -> "VALUE " + loads.incrementAndGet());
+        assertEquals("LOADED BY ANOTHER 1", cache.get("1"));
+        assertEquals("Check value loaded since the miss is not loaded again", 0, loads.get());
+        assertEquals(1, data.stats().missCount());
+    }
+
+    @Test
+    public void testCacheRefreshesStaleValues() {
+        AtomicLong time = new AtomicLong();
+        AtomicInteger version = new AtomicInteger();
+        Cache cache = new LoadingCache(new DataCache().size(3), key -> key + " v" + version.incrementAndGet())
+                .refreshAfterWrite(1, TimeUnit.MINUTES).executor(Runnable::run).ticker(time::get);
+        assertEquals("1 v1", cache.get("1"));
+        time.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertEquals("Check fresh value is not refreshed", "1 v1", cache.get("1"));
+        time.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        assertEquals("Check stale value is returned while refreshing", "1 v1", cache.get("1"));
+        assertEquals("Check refreshed value", "1 v2", cache.get("1"));
+    }
+
+    @Test
+    public void testCacheKeepsValueWhenRefreshFails() {
+        AtomicLong time = new AtomicLong();
+        AtomicInteger loads = new AtomicInteger();
+        Cache cache = new LoadingCache(new DataCache().size(3), key -> {
+            if (loads.incrementAndGet() > 1) {
+                throw new IllegalStateException("Backend down");
+            }
+            return "VALUE " + key;
+        }).refreshAfterWrite(1, TimeUnit.MINUTES).executor(Runnable::run).ticker(time::get);
+        assertEquals("VALUE 1", cache.get("1"));
+        time.addAndGet(TimeUnit.MINUTES.toNanos(2));
+        assertEquals("VALUE 1", cache.get("1"));
+        assertEquals("Check value is kept when refresh fails", "VALUE 1", cache.get("1"));
+    }
+
+}
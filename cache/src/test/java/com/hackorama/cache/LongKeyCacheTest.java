@@ -0,0 +1,119 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongKeyCacheTest {
+
+    @Test
+    public void testCacheBasicOperations() {
+        LongKeyCache cache = new LongKeyCache().size(3);
+        cache.put(1, "ONE");
+        cache.put(2, "TWO");
+        assertEquals("ONE", cache.get(1));
+        assertEquals("TWO", cache.get(2));
+        cache.put(2, "TWO TWO");
+        assertEquals("TWO TWO", cache.get(2));
+        cache.remove(1);
+        assertEquals("Verify removed element", null, cache.get(1));
+        cache.put(2, null);
+        assertEquals("Verify null value removes element", null, cache.get(2));
+        cache.put(3, "THREE");
+        cache.clear();
+        assertEquals("Verify clear removed all elements", null, cache.get(3));
+    }
+
+    @Test
+    public void testCacheEvictsLeastFrequent() {
+        LongKeyCache cache = new LongKeyCache().size(3);
+        cache.put(1, "ONE");
+        cache.put(2, "TWO");
+        cache.put(3, "THREE");
+        cache.get(1);
+        cache.get(1);
+        cache.get(3);
+        cache.put(4, "FOUR");
+        assertEquals("Verify least frequent is evicted", null, cache.get(2));
+        cache.put(5, "FIVE");
+        assertEquals("Verify unread element is evicted first", null, cache.get(4));
+        assertEquals("ONE", cache.get(1));
+        assertEquals("THREE", cache.get(3));
+    }
+
+    @Test
+    public void testCacheEvictsByPriority() {
+        LongKeyCache recent = new LongKeyCache().size(3).with(LongKeyCache.Eviction.RECENT_ACCESS);
+        recent.put(1, "ONE");
+        recent.put(2, "TWO");
+        recent.put(3, "THREE");
+        recent.get(1);
+        recent.put(4, "FOUR");
+        assertEquals(null, recent.get(2));
+        assertEquals("ONE", recent.get(1));
+
+        LongKeyCache largest = new LongKeyCache().size(3).with(LongKeyCache.Eviction.SIZE).most();
+        largest.put(1, "ONE");
+        largest.put(2, "THREE");
+        largest.put(3, "TWO");
+        largest.put(4, "FOUR");
+        assertEquals(null, largest.get(2));
+        assertEquals("FOUR", largest.get(4));
+
+        LongKeyCache newest = new LongKeyCache().size(3).with(LongKeyCache.Eviction.RECENT_ADD).most();
+        newest.put(1, "ONE");
+        newest.put(2, "TWO");
+        newest.put(3, "THREE");
+        newest.put(4, "FOUR");
+        assertEquals(null, newest.get(3));
+        assertEquals("ONE", newest.get(1));
+    }
+
+    @Test
+    public void testCacheEvictsMostInReverseOrderForEqualPriority() {
+        LongKeyCache largest = new LongKeyCache().size(3).with(LongKeyCache.Eviction.SIZE).most();
+        largest.put(1, "ONE");
+        largest.put(2, "TWO");
+        largest.put(3, "SIX");
+        largest.put(4, "TEN");
+        assertEquals("Check latest of the largest is evicted", null, largest.get(3));
+        assertEquals("ONE", largest.get(1));
+        assertEquals("TWO", largest.get(2));
+        assertEquals("TEN", largest.get(4));
+    }
+
+    @Test
+    public void testCacheMatchesInsertionOrderUnderRandomOperations() {
+        LongKeyCache cache = new LongKeyCache().size(64).with(LongKeyCache.Eviction.RECENT_ADD);
+        Map<Long, String> expected = new LinkedHashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long key = random.nextInt(256) * 1024L; // collide in the table
+            if (random.nextInt(4) == 0) {
+                cache.remove(key);
+                expected.remove(key);
+            } else {
+                String value = String.valueOf(i);
+                cache.put(key, value);
+                expected.remove(key);
+                expected.put(key, value);
+                if (expected.size() > 64) {
+                    Iterator<Long> oldest = expected.keySet().iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+            }
+            long probe = random.nextInt(256) * 1024L;
+            assertEquals(expected.get(probe), cache.get(probe));
+        }
+        for (long key = 0; key < 256; key++) {
+            assertEquals(expected.get(key * 1024), cache.get(key * 1024));
+        }
+    }
+
+}
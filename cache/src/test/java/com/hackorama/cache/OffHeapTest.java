@@ -0,0 +1,167 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.hackorama.cache.policy.RecentAddPolicy;
+
+public class OffHeapTest {
+
+    @Test
+    public void testOffHeapCacheOperations() {
+        Cache cache = new DataCache().size(3).offHeap(1 << 20);
+        cache.put("1", "ONE");
+        cache.put("2", "\u0414\u0412\u0410 \u4e8c");
+        cache.put("3", null);
+        assertEquals("ONE", cache.get("1"));
+        assertEquals("Check multi byte characters", "\u0414\u0412\u0410 \u4e8c", cache.get("2"));
+        assertEquals(null, cache.get("3"));
+        cache.put("1", "UNO");
+        assertEquals("UNO", cache.get("1"));
+        cache.remove("1");
+        assertEquals("Verify removed element", null, cache.get("1"));
+        cache.clear();
+        assertEquals("Verify clear removed all elements", null, cache.get("2"));
+    }
+
+    @Test
+    public void testOffHeapCacheEvictsWhenSlabsAreFull() {
+        Cache cache = new DataCache().size(10_000).offHeap(1 << 20).with(new RecentAddPolicy());
+        String value = new String(new char[1000]).replace('\0', 'x');
+        for (int i = 0; i < 3000; i++) {
+            cache.put(String.valueOf(i), value);
+        }
+        assertEquals("Check least recently added element is evicted", null, cache.get("0"));
+        for (int i = 2900; i < 3000; i++) {
+            assertEquals("Check recently added elements are kept", value, cache.get(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void testOffHeapCacheDoesNotKeepValueLargerThanSlab() {
+        Cache cache = new DataCache().size(3).offHeap(4 << 20);
+        cache.put("1", "ONE");
+        cache.put("2", new String(new char[OffHeapStorage.SLAB_SIZE]));
+        assertEquals("Check large value is not cached", null, cache.get("2"));
+    }
+
+    @Test
+    public void testOffHeapCacheDoesNotEvictForValueLargerThanSlab() {
+        Cache cache = new DataCache().size(10).offHeap(4 << 20);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", new String(new char[OffHeapStorage.SLAB_SIZE]));
+        cache.putAll(Collections.singletonMap("4", new String(new char[OffHeapStorage.SLAB_SIZE])));
+        assertEquals(null, cache.get("3"));
+        assertEquals(null, cache.get("4"));
+        assertEquals("Check cached elements are not evicted for it", "ONE", cache.get("1"));
+        assertEquals("Check cached elements are not evicted for it", "TWO", cache.get("2"));
+    }
+
+    @Test
+    public void testOffHeapCacheKeepsSmallValuesForLargerValue() {
+        Cache cache = new DataCache().size(10_000).offHeap(1 << 20);
+        String small = new String(new char[100]).replace('\0', 's');
+        for (int i = 0; i < 1000; i++) {
+            cache.put(String.valueOf(i), small);
+        }
+        cache.put("LARGE", new String(new char[5000]).replace('\0', 'l'));
+        assertEquals(5000, cache.get("LARGE").length());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("Check values of another size are kept", small, cache.get(String.valueOf(i)));
+        }
+    }
+
+    @Test
+    public void testOffHeapCacheEvictsWithinSizeWhenFull() {
+        Cache cache = new DataCache().size(100_000).offHeap(1 << 20).with(new RecentAddPolicy());
+        String small = new String(new char[100]).replace('\0', 's');
+        String large = new String(new char[5000]).replace('\0', 'l');
+        for (int i = 0; i < 100; i++) {
+            cache.put("SMALL " + i, small);
+        }
+        for (int i = 0; i < 1000; i++) { // far more than the slab holds
+            cache.put("LARGE " + i, large);
+        }
+        assertEquals(large, cache.get("LARGE 999"));
+        assertNull("Check oldest large value is evicted", cache.get("LARGE 0"));
+        for (int i = 0; i < 100; i++) {
+            assertEquals("Check small values are not evicted for large ones", small, cache.get("SMALL " + i));
+        }
+    }
+
+    @Test
+    public void testConcurrentOffHeapCacheKeepsValuesOfMixedSizes() {
+        Cache cache = new ConcurrentDataCache().size(10_000).offHeap(16 << 20);
+        String small = new String(new char[100]).replace('\0', 's');
+        for (int i = 0; i < 1000; i++) {
+            cache.put(String.valueOf(i), small);
+        }
+        for (int i = 0; i < 16; i++) {
+            cache.put("LARGE " + i, new String(new char[5000]));
+        }
+        int kept = 0;
+        for (int i = 0; i < 1000; i++) {
+            kept += small.equals(cache.get(String.valueOf(i))) ? 1 : 0;
+        }
+        assertEquals(1000, kept);
+    }
+
+    @Test
+    public void testOffHeapCacheTakesOverPagesOfAnotherSize() {
+        Cache cache = new DataCache().size(100_000).offHeap(1 << 20);
+        String small = new String(new char[100]).replace('\0', 's');
+        for (int i = 0; i < 20_000; i++) { // fills every page with small values
+            cache.put(String.valueOf(i), small);
+        }
+        cache.put("LARGE", new String(new char[200_000]));
+        assertEquals(200_000, cache.get("LARGE").length());
+        int kept = 0;
+        for (int i = 0; i < 20_000; i++) {
+            kept += cache.get(String.valueOf(i)) != null ? 1 : 0;
+        }
+        assertTrue("Check only the pages taken over are evicted, kept " + kept, kept > 5000);
+    }
+
+    @Test
+    public void testSlabAllocatorSharesSlabBetweenSizes() {
+        SlabAllocator allocator = new SlabAllocator(4096, 4096);
+        long small = allocator.allocate(64);
+        long medium = allocator.allocate(200);
+        assertTrue("Check a new size takes a free page of the slab", small >= 0 && medium >= 0);
+        assertEquals(4096, allocator.reserved());
+    }
+
+    @Test
+    public void testConcurrentOffHeapCache() {
+        Cache cache = new ConcurrentDataCache().size(64).offHeap(16 << 20);
+        cache.put("1", "ONE");
+        assertEquals("ONE", cache.get("1"));
+    }
+
+    @Test
+    public void testSlabAllocatorReusesEmptySlabsForAnySize() {
+        SlabAllocator allocator = new SlabAllocator(2 * 4096, 4096);
+        long small = allocator.allocate(64);
+        long large = allocator.allocate(4096);
+        assertTrue(small >= 0 && large >= 0);
+        assertEquals("Check allocation fails when all slabs are used", -1, allocator.allocate(4096));
+        allocator.free(small);
+        assertTrue("Check empty slab is reused for another size", allocator.allocate(4096) >= 0);
+        assertEquals(2 * 4096, allocator.reserved());
+    }
+
+    @Test
+    public void testSlabAllocatorReusesFreedChunks() {
+        SlabAllocator allocator = new SlabAllocator(4096, 4096);
+        long first = allocator.allocate(64);
+        long second = allocator.allocate(64);
+        allocator.free(first);
+        assertEquals("Check freed chunk is allocated again", first, allocator.allocate(60));
+        assertTrue(second != first);
+    }
+
+}
@@ -2,10 +2,17 @@ package com.hackorama.cache;
 
 import static org.junit.Assert.*;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import org.junit.Test;
 
+import com.hackorama.cache.policy.ArcPolicy;
 import com.hackorama.cache.policy.Policy;
 import com.hackorama.cache.policy.FrequencyPolicy;
+import com.hackorama.cache.policy.RecentAccessPolicy;
+import com.hackorama.cache.policy.SizePolicy;
+import com.hackorama.cache.policy.TinyLfuPolicy;
 
 public class PolicyTest {
 
@@ -16,6 +23,147 @@ public class PolicyTest {
         testMostPolicy(new FrequencyPolicy().most());
     }
 
+    @Test
+    public void testFrequencyPolicyEvictsInArrivalOrderForEqualFrequency() {
+        Policy policy = new FrequencyPolicy();
+        policy.trackReads("1", "");
+        policy.trackReads("2", "");
+        policy.trackReads("3", "");
+        policy.trackReads("1", "");
+        policy.trackReads("3", "");
+        assertEquals("2", policy.evict());
+        assertEquals("1", policy.evict()); // reached frequency two before 3
+        assertEquals("3", policy.evict());
+        assertEquals(null, policy.evict());
+    }
+
+    @Test
+    public void testRecentAccessPolicyMovesReadKeys() {
+        Policy policy = new RecentAccessPolicy();
+        policy.trackReads("1", "");
+        policy.trackReads("2", "");
+        policy.trackReads("3", "");
+        policy.trackReads("1", ""); // 1 is now the most recent
+        assertEquals("2", policy.evict());
+        assertEquals("3", policy.evict());
+        assertEquals("1", policy.evict());
+        assertEquals(null, policy.evict());
+    }
+
+    @Test
+    public void testArcPolicyKeepsFrequentKeysThroughScan() {
+        Cache cache = new DataCache().size(4).with(new ArcPolicy());
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        assertEquals("ONE", cache.get("1"));
+        assertEquals("TWO", cache.get("2"));
+        for (int i = 100; i < 120; i++) {
+            cache.put(String.valueOf(i), "SCAN");
+        }
+        assertEquals("Verify keys seen twice survive a scan", "ONE", cache.get("1"));
+        assertEquals("TWO", cache.get("2"));
+        assertEquals("Verify the latest scanned key is cached", "SCAN", cache.get("119"));
+    }
+
+    @Test
+    public void testArcPolicyAdaptsOnGhostHits() {
+        Policy policy = new ArcPolicy().capacity(3);
+        policy.trackWrites("1", "");
+        policy.trackWrites("2", "");
+        policy.trackReads("2", ""); // seen twice, moves to the frequent list
+        policy.trackWrites("3", "");
+        policy.trackWrites("4", "");
+        assertEquals("1", policy.evict());
+        policy.trackWrites("1", ""); // recent ghost, grows the recent target to one
+        assertEquals("3", policy.evict());
+        policy.trackWrites("5", "");
+        assertEquals("Verify the recent list is kept at its target", "2", policy.evict());
+        policy.trackWrites("2", ""); // frequent ghost, shrinks the recent target to zero
+        assertEquals("Verify the recent list is evicted again", "4", policy.evict());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testArcPolicyHasNoMostOrder() {
+        new ArcPolicy().most();
+    }
+
+    @Test
+    public void testSizePolicyEvictsInSizeOrder() {
+        Policy policy = new SizePolicy();
+        for (int i = 0; i < 100; i++) {
+            policy.trackWrites(String.valueOf(i), new String(new char[(i * 37) % 10]));
+        }
+        int previous = -1;
+        for (int i = 0; i < 50; i++) {
+            int size = Integer.parseInt(policy.evict()) * 37 % 10;
+            assertTrue("Verify least size is evicted first", size >= previous);
+            previous = size;
+        }
+        policy.most();
+        previous = Integer.MAX_VALUE;
+        for (int i = 0; i < 50; i++) {
+            int size = Integer.parseInt(policy.evict()) * 37 % 10;
+            assertTrue("Verify most size is evicted first after order change", size <= previous);
+            previous = size;
+        }
+        assertEquals(null, policy.evict());
+    }
+
+    @Test
+    public void testSizePolicyReplacesPriorityOnWrite() {
+        Policy policy = new SizePolicy();
+        policy.trackWrites("1", "X");
+        policy.trackWrites("2", "XX");
+        policy.trackWrites("1", "XXX"); // replaces the old size of 1
+        assertEquals("2", policy.evict());
+        assertEquals("1", policy.evict());
+        assertEquals(null, policy.evict());
+    }
+
+    @Test
+    public void testTinyLfuPolicyAdmitsByFrequency() {
+        Policy policy = new TinyLfuPolicy().capacity(3); // window of one, main of two
+        policy.trackWrites("1", "");
+        policy.trackWrites("2", "");
+        policy.trackWrites("3", "");
+        policy.trackReads("1", "");
+        policy.trackReads("2", "");
+        policy.trackWrites("4", ""); // 3 leaves the window, seen less than the main victim 1
+        assertEquals("3", policy.evict());
+        policy.trackReads("4", "");
+        policy.trackReads("4", "");
+        policy.trackWrites("5", ""); // 4 leaves the window, seen more than the main victim 1
+        assertEquals("1", policy.evict());
+    }
+
+    @Test
+    public void testTinyLfuPolicyFrequencySaturatesAtFourBits() {
+        Policy policy = new TinyLfuPolicy().capacity(100);
+        for (int i = 0; i < 20; i++) {
+            policy.trackWrites("1", "");
+        }
+        policy.trackWrites("2", "");
+        Map<String, Long> frequencies = new HashMap<>();
+        policy.priorities((key, priority) -> frequencies.put(key, priority & 0xFFFFFFFFL));
+        assertEquals(Long.valueOf(15), frequencies.get("1"));
+        assertEquals(Long.valueOf(1), frequencies.get("2"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTinyLfuPolicyDoesNotEvictMost() {
+        new TinyLfuPolicy().most();
+    }
+
+    @Test
+    public void testPolicyOrderCanChangeAfterTracking() {
+        Policy policy = new FrequencyPolicy();
+        policy.trackReads("1", "");
+        policy.trackReads("2", "");
+        policy.trackReads("2", "");
+        assertEquals("2", policy.most().evict());
+        assertEquals("1", policy.least().evict());
+    }
+
      private void testLeastPolicy(Policy policy) {
         policy.trackReads("1", "");
         policy.trackReads("1", "");
@@ -0,0 +1,153 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.hackorama.cache.policy.RecentAccessPolicy;
+import com.hackorama.cache.policy.SizePolicy;
+import com.hackorama.cache.policy.TinyLfuPolicy;
+
+public class SnapshotTest {
+
+    @Test
+    public void testCacheRestoresFrequencies() throws IOException {
+        DataCache cache = new DataCache().size(3);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        cache.get("1");
+        cache.get("1");
+        cache.get("2");
+        cache.get("3");
+        cache.get("3");
+        DataCache restored = new DataCache().size(3);
+        restored.restore(snapshot(cache));
+        restored.put("4", "FOUR");
+        assertEquals("Verify least frequent is evicted after restore", null, restored.get("2"));
+        assertEquals("ONE", restored.get("1"));
+        assertEquals("THREE", restored.get("3"));
+        assertEquals("FOUR", restored.get("4"));
+    }
+
+    @Test
+    public void testCacheRestoresRecency() throws IOException {
+        DataCache cache = new DataCache().size(3).with(new RecentAccessPolicy());
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        cache.get("3");
+        cache.get("1");
+        cache.get("2");
+        DataCache restored = new DataCache().size(3).with(new RecentAccessPolicy());
+        restored.restore(snapshot(cache));
+        restored.put("4", "FOUR");
+        restored.get("4");
+        assertEquals("Verify least recent is evicted after restore", null, restored.get("3"));
+        restored.put("5", "FIVE");
+        assertEquals(null, restored.get("1"));
+        assertEquals("TWO", restored.get("2"));
+    }
+
+    @Test
+    public void testCacheRestoresIntoSmallerCache() throws IOException {
+        DataCache cache = new DataCache().size(100).with(new SizePolicy());
+        for (int i = 1; i <= 100; i++) {
+            cache.put(String.valueOf(i), new String(new char[i]));
+        }
+        DataCache restored = new DataCache().size(10).with(new SizePolicy());
+        restored.restore(snapshot(cache));
+        for (int i = 1; i <= 100; i++) {
+            assertEquals("Verify only the largest elements are kept", i > 90, restored.get(String.valueOf(i)) != null);
+        }
+    }
+
+    @Test
+    public void testCacheRestoresTinyLfuAndOffHeap() throws IOException {
+        DataCache cache = new DataCache().size(100).with(new TinyLfuPolicy()).offHeap(1 << 20);
+        for (int i = 0; i < 200; i++) {
+            cache.put(String.valueOf(i), "VALUE \u00e9 " + i);
+            cache.get(String.valueOf(i % 10));
+        }
+        cache.put("NULL", null);
+        DataCache restored = new DataCache().size(100).with(new TinyLfuPolicy()).offHeap(1 << 20);
+        restored.restore(snapshot(cache));
+        for (int i = 0; i < 200; i++) {
+            assertEquals(cache.get(String.valueOf(i)), restored.get(String.valueOf(i)));
+        }
+        assertEquals(null, restored.get("NULL"));
+        for (int i = 1000; i < 1100; i++) { // scan
+            restored.put(String.valueOf(i), "SCAN");
+        }
+        assertNotNull("Verify frequencies survive restore", restored.get("5"));
+    }
+
+    @Test
+    public void testConcurrentCacheRestoresSegments() throws IOException {
+        ConcurrentDataCache cache = new ConcurrentDataCache().size(20_000);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(String.valueOf(i), "VALUE " + i);
+        }
+        ConcurrentDataCache restored = new ConcurrentDataCache().size(20_000);
+        restored.restore(snapshot(cache));
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals("VALUE " + i, restored.get(String.valueOf(i)));
+        }
+        DataCache single = new DataCache().size(20_000);
+        single.restore(snapshot(restored));
+        assertEquals("VALUE 42", single.get("42"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testCacheRejectsOtherFiles() throws IOException {
+        Path path = Files.createTempFile("cache", ".snapshot");
+        path.toFile().deleteOnExit();
+        Files.write(path, "NOT A SNAPSHOT".getBytes());
+        new DataCache().restore(path);
+    }
+
+    @Test
+    public void testCacheRejectsCorruptSnapshot() throws IOException {
+        DataCache cache = new DataCache().size(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(String.valueOf(i), "VALUE " + i);
+        }
+        Path path = snapshot(cache);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 12] ^= 0x7F; // inside the last value
+        Files.write(path, bytes);
+        try {
+            new DataCache().size(10).restore(path);
+            fail("Expected corrupt snapshot to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Corrupt cache snapshot"));
+        }
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 1));
+        try {
+            new DataCache().size(10).restore(path);
+            fail("Expected truncated snapshot to be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Truncated cache snapshot"));
+        }
+    }
+
+    private static Path snapshot(DataCache cache) throws IOException {
+        Path path = Files.createTempFile("cache", ".snapshot");
+        path.toFile().deleteOnExit();
+        cache.snapshot(path);
+        return path;
+    }
+
+    private static Path snapshot(ConcurrentDataCache cache) throws IOException {
+        Path path = Files.createTempFile("cache", ".snapshot");
+        path.toFile().deleteOnExit();
+        cache.snapshot(path);
+        return path;
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import com.hackorama.cache.policy.RecentAddPolicy;
+import com.hackorama.cache.stats.CacheStats;
+import com.hackorama.cache.stats.CacheStatsBean;
+
+public class StatsTest {
+
+    @Test
+    public void testCacheRecordsStats() {
+        DataCache cache = new DataCache().size(2).with(new RecentAddPolicy()).recordStats();
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        cache.get("1");
+        cache.get("2");
+        cache.get("3");
+        CacheStats stats = cache.stats();
+        assertEquals(3, stats.putCount());
+        assertEquals(2, stats.hitCount());
+        assertEquals(1, stats.missCount());
+        assertEquals(2.0 / 3, stats.hitRate(), 0.001);
+        assertEquals(1, stats.evictionCount());
+        assertEquals(Long.valueOf(1), stats.evictionCounts().get("RecentAddPolicy"));
+    }
+
+    @Test
+    public void testCacheRecordsExpirations() {
+        AtomicLong time = new AtomicLong();
+        DataCache cache = new DataCache().size(2).ticker(time::get).recordStats();
+        cache.put("1", "ONE", 1, TimeUnit.SECONDS);
+        time.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertEquals(null, cache.get("1"));
+        assertEquals(1, cache.stats().expirationCount());
+        assertEquals(0, cache.stats().evictionCount());
+    }
+
+    @Test
+    public void testCacheStatsDelta() {
+        DataCache cache = new DataCache().size(2).with(new RecentAddPolicy()).recordStats();
+        cache.put("1", "ONE");
+        cache.get("1");
+        CacheStats earlier = cache.stats();
+        cache.get("1");
+        cache.get("2");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        CacheStats delta = cache.stats().minus(earlier);
+        assertEquals(1, delta.hitCount());
+        assertEquals(1, delta.missCount());
+        assertEquals(2, delta.putCount());
+        assertEquals(1, delta.evictionCount());
+    }
+
+    @Test
+    public void testCacheWithoutStatsReportsZero() {
+        DataCache cache = new DataCache().size(2);
+        cache.put("1", "ONE");
+        cache.get("1");
+        assertEquals(0, cache.stats().requestCount());
+    }
+
+    @Test
+    public void testConcurrentCacheRecordsStatsOfAllSegments() {
+        ConcurrentDataCache cache = new ConcurrentDataCache().size(64).recordStats();
+        for (int i = 0; i < 32; i++) {
+            cache.put(String.valueOf(i), String.valueOf(i));
+            cache.get(String.valueOf(i));
+        }
+        assertEquals(32, cache.stats().hitCount());
+        assertEquals(32, cache.stats().putCount());
+    }
+
+    @Test
+    public void testCacheStatsMBean() throws Exception {
+        DataCache cache = new DataCache().size(2).recordStats();
+        ObjectName name = CacheStatsBean.register("test", cache::stats);
+        try {
+            cache.put("1", "ONE");
+            cache.get("1");
+            cache.get("2");
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "HitCount"));
+            assertEquals(0.5, (Double) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "HitRate"),
+                    0.001);
+        } finally {
+            CacheStatsBean.unregister("test");
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import com.hackorama.cache.policy.RecentAccessPolicy;
+
+public class TieredTest {
+
+    @Test
+    public void testEvictedMovesDownAndHitMovesUp() {
+        DataCache secondLevel = new DataCache().size(10);
+        Cache cache = new DataCache().size(2).with(new RecentAccessPolicy()).secondLevel(secondLevel);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        assertEquals("Check evicted element moved down", "ONE", secondLevel.get("1"));
+        assertEquals("ONE", cache.get("1"));
+        assertNull("Check hit moved up", secondLevel.get("1"));
+        assertEquals("Check least recent moved down", "TWO", secondLevel.get("2"));
+        assertEquals("TWO", cache.get("2"));
+        assertEquals("THREE", cache.get("3"));
+    }
+
+    @Test
+    public void testLevelsKeepTimeToLive() {
+        AtomicLong time = new AtomicLong();
+        DataCache secondLevel = new DataCache().size(10).ticker(time::get);
+        Cache cache = new DataCache().size(1).ticker(time::get).expireAfterWrite(10, TimeUnit.SECONDS)
+                .secondLevel(secondLevel);
+        cache.put("1", "ONE");
+        time.set(TimeUnit.SECONDS.toNanos(5));
+        cache.put("2", "TWO");
+        time.set(TimeUnit.SECONDS.toNanos(8));
+        assertEquals("ONE", cache.get("1"));
+        time.set(TimeUnit.SECONDS.toNanos(11));
+        assertNull("Check time to live kept across levels", cache.get("1"));
+        assertEquals("TWO", cache.get("2"));
+        time.set(TimeUnit.SECONDS.toNanos(16));
+        assertNull(cache.get("2"));
+    }
+
+    @Test
+    public void testChangesReplaceSecondLevel() {
+        DataCache secondLevel = new DataCache().size(10);
+        Cache cache = new DataCache().size(1).secondLevel(secondLevel);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("1", "NEW ONE");
+        assertNull("Check stale value dropped from second level", secondLevel.get("1"));
+        assertEquals("NEW ONE", cache.get("1"));
+        cache.remove("2");
+        assertNull(secondLevel.get("2"));
+        assertNull(cache.get("2"));
+    }
+
+    @Test
+    public void testMappedFileSecondLevel() throws IOException {
+        Path file = Files.createTempFile("cache", ".slabs");
+        file.toFile().deleteOnExit();
+        Cache cache = new DataCache().size(10)
+                .secondLevel(new DataCache().size(1000).offHeap(4 * OffHeapStorage.SLAB_SIZE, file));
+        for (int i = 0; i < 1000; i++) {
+            cache.put(String.valueOf(i), "VALUE " + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("VALUE " + i, cache.get(String.valueOf(i)));
+        }
+        assertTrue(Files.size(file) >= OffHeapStorage.SLAB_SIZE);
+    }
+
+    @Test
+    public void testConcurrentSecondLevel() throws IOException {
+        Path directory = Files.createTempDirectory("cache");
+        directory.toFile().deleteOnExit();
+        Cache cache = new ConcurrentDataCache().size(64).secondLevel(4096, directory,
+                64 * OffHeapStorage.SLAB_SIZE);
+        for (int i = 0; i < 2000; i++) {
+            cache.put(String.valueOf(i), "VALUE " + i);
+        }
+        for (int i = 0; i < 2000; i++) {
+            assertEquals("VALUE " + i, cache.get(String.valueOf(i)));
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().deleteOnExit());
+        }
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.hackorama.cache.policy.RecentAddPolicy;
+import com.hackorama.cache.policy.SizePolicy;
+
+public class WeightTest {
+
+    @Test
+    public void testCacheEvictsUntilWeightFits() {
+        DataCache cache = new DataCache().size(64).maximumWeight(20).with(new RecentAddPolicy());
+        cache.put("1", "ONE!"); // 10 bytes as UTF-16
+        cache.put("2", "TWO!");
+        assertEquals(20, cache.weight());
+        cache.put("3", "THREE!!!!"); // 20 bytes, needs the whole cache
+        assertEquals("Check least recently added element is evicted", null, cache.get("1"));
+        assertEquals("Check least recently added element is evicted", null, cache.get("2"));
+        assertEquals("THREE!!!!", cache.get("3"));
+        assertEquals(20, cache.weight());
+    }
+
+    @Test
+    public void testCacheTracksWeightOnReplaceAndRemove() {
+        DataCache cache = new DataCache().size(64).maximumWeight(100);
+        cache.put("1", "X");
+        cache.put("1", "XXXX");
+        assertEquals(10, cache.weight());
+        cache.put("2", "XX");
+        assertEquals(16, cache.weight());
+        cache.remove("1");
+        assertEquals(6, cache.weight());
+        cache.clear();
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void testCacheDoesNotKeepElementHeavierThanCache() {
+        DataCache cache = new DataCache().size(64).maximumWeight(8, (key, value) -> value.length());
+        cache.put("1", "ONE");
+        cache.put("2", "TOO HEAVY");
+        assertEquals("Check heavy element is not cached", null, cache.get("2"));
+        assertEquals("Check other elements are not evicted for it", "ONE", cache.get("1"));
+        assertEquals(3, cache.weight());
+        cache.putAll(Collections.singletonMap("3", "MUCH TOO HEAVY"));
+        assertEquals(null, cache.get("3"));
+        assertEquals("ONE", cache.get("1"));
+        assertEquals(3, cache.weight());
+    }
+
+    @Test
+    public void testCacheWithCustomWeigher() {
+        DataCache cache = new DataCache().size(64).maximumWeight(3, (key, value) -> value.length())
+                .with(new SizePolicy().most());
+        cache.put("1", "X");
+        cache.put("2", "XX");
+        cache.put("3", "X");
+        assertEquals("Check largest element is evicted", null, cache.get("2"));
+        assertEquals("X", cache.get("1"));
+        assertEquals("X", cache.get("3"));
+    }
+
+    @Test
+    public void testCacheIsBoundedBySizeAndWeight() {
+        DataCache cache = new DataCache().size(2).maximumWeight(1000).with(new RecentAddPolicy());
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        assertEquals("Check size still bounds the element count", null, cache.get("1"));
+    }
+
+    @Test
+    public void testConcurrentCacheEvictsUntilWeightFits() {
+        Cache cache = new ConcurrentDataCache().size(64).segments(1).maximumWeight(20)
+                .with(RecentAddPolicy::new);
+        cache.put("1", "ONE!");
+        cache.put("2", "TWO!");
+        cache.put("3", "SIX!");
+        assertEquals("Check least recently added element is evicted", null, cache.get("1"));
+        assertEquals("SIX!", cache.get("3"));
+    }
+
+}
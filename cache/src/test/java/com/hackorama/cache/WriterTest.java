@@ -0,0 +1,242 @@
+package com.hackorama.cache;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class WriterTest {
+
+    /**
+     * Store backed by a map, counting the calls made to it.
+     */
+    private static class Store implements CacheWriter {
+        private final Map<String, String> values = new ConcurrentHashMap<>();
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean failing;
+
+        @Override
+        public void write(String key, String value) {
+            writeAll(Collections.singletonMap(key, value));
+        }
+
+        @Override
+        public void delete(String key) {
+            deleteAll(Collections.singleton(key));
+        }
+
+        @Override
+        public void writeAll(Map<String, String> entries) {
+            call();
+            values.putAll(entries);
+        }
+
+        @Override
+        public void deleteAll(Collection<String> keys) {
+            call();
+            values.keySet().removeAll(keys);
+        }
+
+        private void call() {
+            if (failing) {
+                throw new IllegalStateException("Store down");
+            }
+            calls.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testWriteThroughWritesBeforeCaching() {
+        Store store = new Store();
+        Cache cache = new DataCache().size(4).writeThrough(store);
+        cache.put("1", "ONE");
+        assertEquals("ONE", store.values.get("1"));
+        Map<String, String> entries = new HashMap<>();
+        entries.put("2", "TWO");
+        entries.put("3", "THREE");
+        cache.putAll(entries);
+        assertEquals("THREE", store.values.get("3"));
+        assertEquals("Check batch is written with one call", 2, store.calls.get());
+        cache.remove("1");
+        assertNull(store.values.get("1"));
+        cache.removeAll(Arrays.asList("2", "3"));
+        assertTrue(store.values.isEmpty());
+        store.failing = true;
+        try {
+            cache.put("4", "FOUR");
+            fail("Expected writer failure");
+        } catch (IllegalStateException e) {
+            assertNull("Check cache is unchanged when the write fails", cache.get("4"));
+        }
+    }
+
+    @Test
+    public void testWriteBehindCoalescesWrites() {
+        Store store = new Store();
+        WriteBehind writeBehind = new WriteBehind(store).delay(1, TimeUnit.HOURS);
+        Cache cache = new ConcurrentDataCache().size(64).writeBehind(writeBehind);
+        for (int i = 0; i < 100; i++) {
+            cache.put("1", "VALUE " + i);
+            cache.put("2", "VALUE " + i);
+        }
+        cache.put("3", "THREE");
+        cache.remove("3");
+        assertEquals("VALUE 99", cache.get("1"));
+        assertEquals(0, store.calls.get());
+        assertEquals(3, writeBehind.pending());
+        writeBehind.flush();
+        assertEquals("Check one write and one delete call", 2, store.calls.get());
+        assertEquals("VALUE 99", store.values.get("1"));
+        assertEquals("VALUE 99", store.values.get("2"));
+        assertFalse(store.values.containsKey("3"));
+        assertEquals(0, writeBehind.pending());
+    }
+
+    @Test
+    public void testWriteBehindFlushesWhenFull() {
+        Store store = new Store();
+        WriteBehind writeBehind = new WriteBehind(store).delay(1, TimeUnit.HOURS).maximumPending(3);
+        Cache cache = new DataCache().size(64).writeBehind(writeBehind);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        assertEquals(0, store.calls.get());
+        cache.put("3", "THREE");
+        assertEquals("Check full queue is written by the caller", 3, store.values.size());
+        assertEquals(0, writeBehind.pending());
+    }
+
+    @Test
+    public void testWriteBehindFlushesOnEvict() {
+        Store store = new Store();
+        WriteBehind writeBehind = new WriteBehind(store).delay(1, TimeUnit.HOURS);
+        Cache cache = new DataCache().size(2).writeBehind(writeBehind);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        cache.put("3", "THREE");
+        assertNull(cache.get("1"));
+        assertEquals("Check evicted key is written", "ONE", store.values.get("1"));
+        assertEquals(2, writeBehind.pending());
+    }
+
+    @Test
+    public void testWriteBehindFailureDoesNotFailEviction() {
+        Store store = new Store();
+        WriteBehind writeBehind = new WriteBehind(store).delay(1, TimeUnit.HOURS);
+        Cache cache = new DataCache().size(2).writeBehind(writeBehind);
+        cache.put("1", "ONE");
+        cache.put("2", "TWO");
+        store.failing = true;
+        cache.put("3", "THREE"); // evicts 1, its write fails
+        assertEquals("THREE", cache.get("3"));
+        assertEquals("Check failed write of the evicted key stays pending", 3, writeBehind.pending());
+        store.failing = false;
+        writeBehind.flush();
+        assertEquals("ONE", store.values.get("1"));
+    }
+
+    @Test
+    public void testWriteBehindFailureDoesNotStopExpiry() {
+        AtomicLong time = new AtomicLong();
+        Store store = new Store();
+        WriteBehind writeBehind = new WriteBehind(store).delay(1, TimeUnit.HOURS);
+        DataCache cache = new DataCache().size(64).writeBehind(writeBehind).ticker(time::get);
+        cache.put("1", "ONE", 1, TimeUnit.SECONDS);
+        cache.put("2", "TWO", 1, TimeUnit.SECONDS);
+        store.failing = true;
+        time.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertNull(cache.get("1"));
+        assertNull(cache.get("2"));
+        store.failing = false;
+        writeBehind.flush();
+        assertEquals("ONE", store.values.get("1"));
+        assertEquals("TWO", store.values.get("2"));
+    }
+
+    @Test
+    public void testWriteBehindWritesInBackground() throws InterruptedException {
+        CountDownLatch written = new CountDownLatch(1);
+        Store store = new Store() {
+            @Override
+            public void writeAll(Map<String, String> entries) {
+                super.writeAll(entries);
+                written.countDown();
+            }
+        };
+        Cache cache = new DataCache().size(64)
+                .writeBehind(new WriteBehind(store).delay(10, TimeUnit.MILLISECONDS));
+        cache.put("1", "ONE");
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        assertEquals("ONE", store.values.get("1"));
+    }
+
+    @Test
+    public void testWriteBehindStaysBoundedWhileWriterFails() {
+        Store store = new Store();
+        WriteBehind writeBehind = new WriteBehind(store).delay(1, TimeUnit.HOURS).maximumPending(3);
+        store.failing = true;
+        writeBehind.write("1", "ONE");
+        writeBehind.write("2", "TWO");
+        writeBehind.write("3", "VALUE 3"); // fills the changes, kept pending though the write fails
+        assertEquals(3, writeBehind.pending());
+        for (int i = 4; i < 100; i++) {
+            try {
+                writeBehind.write(String.valueOf(i), "VALUE " + i);
+                fail("Expected writer failure");
+            } catch (IllegalStateException e) {
+                assertEquals("Check pending changes stay bounded", 3, writeBehind.pending());
+            }
+        }
+        writeBehind.write("1", "NEW ONE"); // pending key, replaced in place
+        assertEquals(3, writeBehind.pending());
+        store.failing = false;
+        writeBehind.write("4", "FOUR");
+        writeBehind.flush();
+        assertEquals("NEW ONE", store.values.get("1"));
+        assertEquals("VALUE 3", store.values.get("3"));
+        assertEquals("FOUR", store.values.get("4"));
+        assertFalse("Check rejected change is not written", store.values.containsKey("50"));
+    }
+
+    @Test
+    public void testWriteBehindDoesNotFailChangeThatFillsPending() {
+        Store store = new Store();
+        WriteBehind writeBehind = new WriteBehind(store).delay(1, TimeUnit.HOURS).maximumPending(1);
+        Cache cache = new DataCache().size(64).writeBehind(writeBehind);
+        store.failing = true;
+        cache.put("1", "NEW");
+        assertEquals("Check accepted change is cached", "NEW", cache.get("1"));
+        store.failing = false;
+        writeBehind.flush();
+        assertEquals("NEW", store.values.get("1"));
+    }
+
+    @Test
+    public void testWriteBehindKeepsFailedBatch() {
+        Store store = new Store();
+        WriteBehind writeBehind = new WriteBehind(store).delay(1, TimeUnit.HOURS);
+        Cache cache = new DataCache().size(64).writeBehind(writeBehind);
+        cache.put("1", "ONE");
+        store.failing = true;
+        try {
+            writeBehind.flush();
+            fail("Expected writer failure");
+        } catch (IllegalStateException e) {
+            assertEquals(1, writeBehind.pending());
+        }
+        cache.put("1", "NEW ONE");
+        store.failing = false;
+        writeBehind.flush();
+        assertEquals("Check newer change wins over the retried one", "NEW ONE", store.values.get("1"));
+    }
+
+}